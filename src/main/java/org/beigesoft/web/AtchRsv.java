@@ -0,0 +1,349 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.web;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+
+import javax.activation.DataSource;
+import javax.activation.FileDataSource;
+import javax.activation.FileTypeMap;
+import javax.mail.util.ByteArrayDataSource;
+
+/**
+ * <p>Email attachments resolver. It resolves attachment path (absolute
+ * or relative to WEB-app) to file and caches it in bounded LRU cache
+ * by path, small files are cached with content, so repeated sending of
+ * the same price list doesn't probe and read file system. Cached entry
+ * is validated by file's modification time and size not more often
+ * than "chkMs". File that is changed while it's read isn't cached,
+ * it's attached as file.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class AtchRsv {
+
+  /**
+   * <p>Default max cached entries.</p>
+   **/
+  public static final int MAXENTDEF = 256;
+
+  /**
+   * <p>Default max size of file which content is cached.</p>
+   **/
+  public static final long MAXSZDEF = 256L * 1024L;
+
+  /**
+   * <p>Default max total cached content size.</p>
+   **/
+  public static final long MAXTOTDEF = 16L * 1024L * 1024L;
+
+  /**
+   * <p>Default validation period, milliseconds.</p>
+   **/
+  public static final long CHKMSDEF = 2000L;
+
+  /**
+   * <p>Map load factor.</p>
+   **/
+  private static final float LDFCT = 0.75f;
+
+  /**
+   * <p>Entries by path, in access order.</p>
+   **/
+  private final LinkedHashMap<String, AtchEnt> ents =
+    new LinkedHashMap<String, AtchEnt>(MAXENTDEF, LDFCT, true);
+
+  /**
+   * <p>WEB-app path for relative paths.</p>
+   **/
+  private volatile String appPth;
+
+  /**
+   * <p>Max cached entries.</p>
+   **/
+  private volatile int maxEnt = MAXENTDEF;
+
+  /**
+   * <p>Max size of file which content is cached.</p>
+   **/
+  private volatile long maxSz = MAXSZDEF;
+
+  /**
+   * <p>Max total cached content size.</p>
+   **/
+  private volatile long maxTot = MAXTOTDEF;
+
+  /**
+   * <p>Validation period, milliseconds.</p>
+   **/
+  private volatile long chkMs = CHKMSDEF;
+
+  /**
+   * <p>Total cached content size.</p>
+   **/
+  private long tot;
+
+  /**
+   * <p>Resolves attachment.</p>
+   * @param pPth attachment path
+   * @return data source
+   * @throws Exception - if there is no file
+   **/
+  public final DataSource rsv(final String pPth) throws Exception {
+    long now = System.currentTimeMillis();
+    AtchEnt ent;
+    synchronized (this) {
+      ent = this.ents.get(pPth);
+    }
+    if (ent != null) {
+      if (now - ent.chkTm < this.chkMs) {
+        return ent.ds;
+      }
+      if (ent.fl.lastModified() == ent.mtm && ent.fl.length() == ent.len) {
+        ent.chkTm = now;
+        return ent.ds;
+      }
+    }
+    File fl = new File(pPth);
+    if (!fl.exists()) {
+      //URI uploaded relative to WEB-APP path:
+      String fp = pPth;
+      if (!"/".equals(File.separator)) {
+        fp = fp.replace("/", "\\");
+      }
+      fl = new File(this.appPth + File.separator + fp);
+    }
+    if (!fl.exists()) {
+      synchronized (this) {
+        rem(pPth);
+      }
+      throw new Exception("There is no file: " + pPth);
+    }
+    AtchEnt nent = new AtchEnt();
+    nent.fl = fl;
+    nent.mtm = fl.lastModified();
+    nent.len = fl.length();
+    nent.chkTm = now;
+    if (nent.len <= this.maxSz) {
+      byte[] bts = new byte[(int) nent.len];
+      int ofs = 0;
+      InputStream is = new FileInputStream(fl);
+      try {
+        int cnt;
+        while (ofs < bts.length
+          && (cnt = is.read(bts, ofs, bts.length - ofs)) != -1) {
+          ofs += cnt;
+        }
+      } finally {
+        is.close();
+      }
+      if (ofs != bts.length || fl.length() != nent.len
+        || fl.lastModified() != nent.mtm) {
+        //it's being changed, e.g. rewritten:
+        synchronized (this) {
+          rem(pPth);
+        }
+        return new FileDataSource(fl);
+      }
+      ByteArrayDataSource bds = new ByteArrayDataSource(bts,
+        FileTypeMap.getDefaultFileTypeMap().getContentType(fl));
+      bds.setName(fl.getName());
+      nent.ds = bds;
+      nent.csz = bts.length;
+    } else {
+      nent.ds = new FileDataSource(fl);
+    }
+    synchronized (this) {
+      rem(pPth);
+      this.ents.put(pPth, nent);
+      this.tot += nent.csz;
+      Iterator<AtchEnt> it = this.ents.values().iterator();
+      while (it.hasNext() && (this.ents.size() > this.maxEnt
+        || this.tot > this.maxTot)) {
+        AtchEnt old = it.next();
+        this.tot -= old.csz;
+        it.remove();
+      }
+    }
+    return nent.ds;
+  }
+
+  /**
+   * <p>Gets cached file size.</p>
+   * @param pPth attachment path
+   * @return size or 0 if it isn't cached
+   **/
+  public final synchronized long len(final String pPth) {
+    AtchEnt ent = this.ents.get(pPth);
+    if (ent == null) {
+      return 0L;
+    }
+    return ent.len;
+  }
+
+  /**
+   * <p>Clears cache.</p>
+   **/
+  public final synchronized void clear() {
+    this.ents.clear();
+    this.tot = 0L;
+  }
+
+  /**
+   * <p>Removes entry.</p>
+   * @param pPth attachment path
+   **/
+  private void rem(final String pPth) {
+    AtchEnt old = this.ents.remove(pPth);
+    if (old != null) {
+      this.tot -= old.csz;
+    }
+  }
+
+  /**
+   * <p>Cached attachment.</p>
+   **/
+  private static final class AtchEnt {
+
+    /**
+     * <p>Resolved file.</p>
+     **/
+    private File fl;
+
+    /**
+     * <p>File's modification time.</p>
+     **/
+    private long mtm;
+
+    /**
+     * <p>File's size.</p>
+     **/
+    private long len;
+
+    /**
+     * <p>Cached content size.</p>
+     **/
+    private long csz;
+
+    /**
+     * <p>Last validation time.</p>
+     **/
+    private volatile long chkTm;
+
+    /**
+     * <p>Data source.</p>
+     **/
+    private DataSource ds;
+  }
+
+  //Simple getters and setters:
+  /**
+   * <p>Getter for appPth.</p>
+   * @return String
+   **/
+  public final String getAppPth() {
+    return this.appPth;
+  }
+
+  /**
+   * <p>Setter for appPth.</p>
+   * @param pAppPth reference
+   **/
+  public final void setAppPth(final String pAppPth) {
+    this.appPth = pAppPth;
+  }
+
+  /**
+   * <p>Getter for maxEnt.</p>
+   * @return int
+   **/
+  public final int getMaxEnt() {
+    return this.maxEnt;
+  }
+
+  /**
+   * <p>Setter for maxEnt.</p>
+   * @param pMaxEnt reference
+   **/
+  public final void setMaxEnt(final int pMaxEnt) {
+    this.maxEnt = pMaxEnt;
+  }
+
+  /**
+   * <p>Getter for maxSz.</p>
+   * @return long
+   **/
+  public final long getMaxSz() {
+    return this.maxSz;
+  }
+
+  /**
+   * <p>Setter for maxSz.</p>
+   * @param pMaxSz reference
+   **/
+  public final void setMaxSz(final long pMaxSz) {
+    this.maxSz = pMaxSz;
+  }
+
+  /**
+   * <p>Getter for maxTot.</p>
+   * @return long
+   **/
+  public final long getMaxTot() {
+    return this.maxTot;
+  }
+
+  /**
+   * <p>Setter for maxTot.</p>
+   * @param pMaxTot reference
+   **/
+  public final void setMaxTot(final long pMaxTot) {
+    this.maxTot = pMaxTot;
+  }
+
+  /**
+   * <p>Getter for chkMs.</p>
+   * @return long
+   **/
+  public final long getChkMs() {
+    return this.chkMs;
+  }
+
+  /**
+   * <p>Setter for chkMs.</p>
+   * @param pChkMs reference
+   **/
+  public final void setChkMs(final long pChkMs) {
+    this.chkMs = pChkMs;
+  }
+}
@@ -0,0 +1,227 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.web;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import org.beigesoft.log.ILog;
+
+/**
+ * <p>Local ban list in concurrent map. It's saved into file
+ * periodically (if changed) and on release, and loaded on start,
+ * so bans survive restart.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class BanLstLoc implements IBanLst {
+
+  /**
+   * <p>Default snapshot period, milliseconds.</p>
+   **/
+  public static final long SNPMSDEF = 60000L;
+
+  /**
+   * <p>Log.</p>
+   **/
+  private final ILog log;
+
+  /**
+   * <p>Snapshot file.</p>
+   **/
+  private final File fl;
+
+  /**
+   * <p>Bans, key - banned until.</p>
+   **/
+  private final ConcurrentMap<String, Long> bans =
+    new ConcurrentHashMap<String, Long>();
+
+  /**
+   * <p>Whether bans changed since last snapshot.</p>
+   **/
+  private volatile boolean isChg;
+
+  /**
+   * <p>Snapshot writer.</p>
+   **/
+  private final ScheduledExecutorService exr;
+
+  /**
+   * <p>Only constructor, it loads snapshot.</p>
+   * @param pLog log
+   * @param pFl snapshot file
+   * @param pSnpMs snapshot period, milliseconds
+   **/
+  public BanLstLoc(final ILog pLog, final File pFl, final long pSnpMs) {
+    this.log = pLog;
+    this.fl = pFl;
+    load();
+    this.exr = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(final Runnable pRn) {
+        Thread th = new Thread(pRn, "banlst");
+        th.setDaemon(true);
+        return th;
+      }
+    });
+    this.exr.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        if (isChg) {
+          save();
+        }
+      }
+    }, pSnpMs, pSnpMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * <p>Checks if key is banned.</p>
+   * @param pKey key
+   * @return if banned
+   **/
+  @Override
+  public final boolean isBanned(final String pKey) {
+    Long till = this.bans.get(pKey);
+    if (till == null) {
+      return false;
+    }
+    if (till > System.currentTimeMillis()) {
+      return true;
+    }
+    this.bans.remove(pKey, till);
+    return false;
+  }
+
+  /**
+   * <p>Bans key.</p>
+   * @param pKey key
+   * @param pTill banned until, milliseconds
+   **/
+  @Override
+  public final void ban(final String pKey, final long pTill) {
+    this.bans.put(pKey, pTill);
+    this.isChg = true;
+  }
+
+  /**
+   * <p>Stops writer and saves snapshot.</p>
+   **/
+  @Override
+  public final void release() {
+    this.exr.shutdown();
+    save();
+  }
+
+  /**
+   * <p>Saves not expired bans into file.</p>
+   **/
+  private synchronized void save() {
+    this.isChg = false;
+    long now = System.currentTimeMillis();
+    File tmp = new File(this.fl.getPath() + ".tmp");
+    try {
+      Writer wri = new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8");
+      try {
+        Iterator<Map.Entry<String, Long>> it = this.bans.entrySet().iterator();
+        while (it.hasNext()) {
+          Map.Entry<String, Long> ent = it.next();
+          if (ent.getValue() > now) {
+            wri.write(ent.getKey() + ";" + ent.getValue() + "\n");
+          } else {
+            it.remove();
+          }
+        }
+      } finally {
+        wri.close();
+      }
+      if (this.fl.exists() && !this.fl.delete()) {
+        throw new Exception("Can't delete " + this.fl);
+      }
+      if (!tmp.renameTo(this.fl)) {
+        throw new Exception("Can't rename " + tmp);
+      }
+    } catch (Exception e) {
+      this.isChg = true;
+      this.log.error(null, getClass(), "Can't save ban list", e);
+    }
+  }
+
+  /**
+   * <p>Loads not expired bans from file.</p>
+   **/
+  private void load() {
+    if (!this.fl.exists()) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    try {
+      BufferedReader rdr = new BufferedReader(new InputStreamReader(
+        new FileInputStream(this.fl), "UTF-8"));
+      try {
+        String ln;
+        while ((ln = rdr.readLine()) != null) {
+          int idx = ln.lastIndexOf(';');
+          if (idx > 0) {
+            long till = Long.parseLong(ln.substring(idx + 1));
+            if (till > now) {
+              this.bans.put(ln.substring(0, idx), till);
+            }
+          }
+        }
+      } finally {
+        rdr.close();
+      }
+    } catch (Exception e) {
+      this.log.error(null, getClass(), "Can't load ban list", e);
+    }
+  }
+
+  //Simple getters:
+  /**
+   * <p>Getter for bans.</p>
+   * @return bans, key - banned until
+   **/
+  public final Map<String, Long> getBans() {
+    return this.bans;
+  }
+}
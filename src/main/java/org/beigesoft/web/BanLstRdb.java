@@ -0,0 +1,243 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.web;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.beigesoft.log.ILog;
+import org.beigesoft.mdl.IRecSet;
+import org.beigesoft.rdb.IRdb;
+
+/**
+ * <p>Ban list shared by cluster nodes through database table BANLST.
+ * Checks use local near-cache. New bans are written by background
+ * thread in batch (write-behind) then near-cache is refreshed
+ * with other nodes bans, so ban reaches other nodes in "syncMs".</p>
+ *
+ * @param <RS> platform dependent record set type
+ * @author Yury Demidenko
+ */
+public class BanLstRdb<RS> implements IBanLst {
+
+  /**
+   * <p>Default synchronization period, milliseconds.</p>
+   **/
+  public static final long SYNCMSDEF = 5000L;
+
+  /**
+   * <p>Log.</p>
+   **/
+  private final ILog log;
+
+  /**
+   * <p>Database.</p>
+   **/
+  private final IRdb<RS> rdb;
+
+  /**
+   * <p>Near-cache, key - banned until.</p>
+   **/
+  private final ConcurrentMap<String, Long> bans =
+    new ConcurrentHashMap<String, Long>();
+
+  /**
+   * <p>Bans to write.</p>
+   **/
+  private final ConcurrentMap<String, Long> pnds =
+    new ConcurrentHashMap<String, Long>();
+
+  /**
+   * <p>Synchronizer.</p>
+   **/
+  private final ScheduledExecutorService exr;
+
+  /**
+   * <p>Only constructor, it creates table if need and loads bans.</p>
+   * @param pLog log
+   * @param pRdb database
+   * @param pSyncMs synchronization period, milliseconds
+   **/
+  public BanLstRdb(final ILog pLog, final IRdb<RS> pRdb,
+    final long pSyncMs) {
+    this.log = pLog;
+    this.rdb = pRdb;
+    try {
+      this.rdb.exec("create table if not exists BANLST (IID varchar(64)"
+        + " not null primary key, TILL bigint not null);");
+    } catch (Exception e) {
+      this.log.error(null, getClass(), "Can't create table BANLST", e);
+    } finally {
+      relRdb();
+    }
+    sync();
+    this.exr = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(final Runnable pRn) {
+        Thread th = new Thread(pRn, "banlst");
+        th.setDaemon(true);
+        return th;
+      }
+    });
+    this.exr.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        sync();
+      }
+    }, pSyncMs, pSyncMs, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * <p>Checks if key is banned by near-cache.</p>
+   * @param pKey key
+   * @return if banned
+   **/
+  @Override
+  public final boolean isBanned(final String pKey) {
+    Long till = this.bans.get(pKey);
+    if (till == null) {
+      return false;
+    }
+    if (till > System.currentTimeMillis()) {
+      return true;
+    }
+    this.bans.remove(pKey, till);
+    return false;
+  }
+
+  /**
+   * <p>Bans key, it will be written by synchronizer.</p>
+   * @param pKey key
+   * @param pTill banned until, milliseconds
+   **/
+  @Override
+  public final void ban(final String pKey, final long pTill) {
+    this.bans.put(pKey, pTill);
+    this.pnds.put(pKey, pTill);
+  }
+
+  /**
+   * <p>Stops synchronizer and writes pending bans.</p>
+   **/
+  @Override
+  public final void release() {
+    this.exr.shutdown();
+    try {
+      this.exr.awaitTermination(SYNCMSDEF, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    sync();
+  }
+
+  /**
+   * <p>Writes pending bans in single transaction, deletes expired ones,
+   * then refreshes near-cache. Not written bans stay pending.</p>
+   **/
+  private synchronized void sync() {
+    Map<String, Long> btch = new HashMap<String, Long>();
+    for (Map.Entry<String, Long> ent : this.pnds.entrySet()) {
+      btch.put(ent.getKey(), ent.getValue());
+    }
+    long now = System.currentTimeMillis();
+    Map<String, Long> fresh = new HashMap<String, Long>();
+    IRecSet<RS> rs = null;
+    try {
+      this.rdb.setAcmt(false);
+      this.rdb.setTrIsl(IRdb.TRRC);
+      this.rdb.begin();
+      for (Map.Entry<String, Long> ent : btch.entrySet()) {
+        String iid = ent.getKey().replace("'", "''");
+        this.rdb.delete("BANLST", "IID='" + iid + "'");
+        this.rdb.exec("insert into BANLST (IID, TILL) values ('" + iid
+          + "', " + ent.getValue() + ");");
+      }
+      this.rdb.delete("BANLST", "TILL<" + now);
+      rs = this.rdb.retRs("select IID, TILL from BANLST;");
+      if (rs.first()) {
+        do {
+          fresh.put(rs.getStr("IID"), rs.getLong("TILL"));
+        } while (rs.next());
+      }
+      rs.close();
+      rs = null;
+      this.rdb.commit();
+    } catch (Exception e) {
+      try {
+        if (rs != null) {
+          rs.close();
+        }
+        if (!this.rdb.getAcmt()) {
+          this.rdb.rollBack();
+        }
+      } catch (Exception e1) {
+        this.log.error(null, getClass(), "Can't roll back", e1);
+      }
+      this.log.error(null, getClass(), "Can't sync ban list", e);
+      return;
+    } finally {
+      relRdb();
+    }
+    for (Map.Entry<String, Long> ent : btch.entrySet()) {
+      this.pnds.remove(ent.getKey(), ent.getValue());
+    }
+    for (Map.Entry<String, Long> ent : fresh.entrySet()) {
+      Long till = this.bans.get(ent.getKey());
+      if (till == null || till < ent.getValue()) {
+        this.bans.put(ent.getKey(), ent.getValue());
+      }
+    }
+  }
+
+  /**
+   * <p>Releases database connection.</p>
+   **/
+  private void relRdb() {
+    try {
+      this.rdb.release();
+    } catch (Exception e) {
+      this.log.error(null, getClass(), "Can't release RDB", e);
+    }
+  }
+
+  //Simple getters:
+  /**
+   * <p>Getter for bans.</p>
+   * @return near-cache, key - banned until
+   **/
+  public final Map<String, Long> getBans() {
+    return this.bans;
+  }
+}
@@ -0,0 +1,253 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.web;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * <p>Response output stream that compresses data with GZIP or deflate
+ * by pooled deflater. Data less than threshold is sent as is,
+ * so content encoding header is set only when threshold is reached.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class CmprOus extends OutputStream {
+
+  /**
+   * <p>GZIP header: magic, deflate method, no flags, no time,
+   * no extra flags, unknown OS.</p>
+   **/
+  private static final byte[] GZHDR = {(byte) 0x1f, (byte) 0x8b,
+    Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+  /**
+   * <p>Compressed data buffer size.</p>
+   **/
+  private static final int OBUFSZ = 8192;
+
+  /**
+   * <p>Response.</p>
+   **/
+  private final HttpServletResponse resp;
+
+  /**
+   * <p>Response stream.</p>
+   **/
+  private final OutputStream ous;
+
+  /**
+   * <p>Deflaters pool.</p>
+   **/
+  private final DflPl dflPl;
+
+  /**
+   * <p>Whether it's GZIP, otherwise deflate.</p>
+   **/
+  private final boolean isGz;
+
+  /**
+   * <p>Threshold buffer.</p>
+   **/
+  private final byte[] buf;
+
+  /**
+   * <p>Single byte buffer.</p>
+   **/
+  private final byte[] one = new byte[1];
+
+  /**
+   * <p>Buffered bytes count.</p>
+   **/
+  private int cnt;
+
+  /**
+   * <p>Deflater, not NULL after threshold is reached.</p>
+   **/
+  private Deflater dfl;
+
+  /**
+   * <p>Compressed data buffer.</p>
+   **/
+  private byte[] obuf;
+
+  /**
+   * <p>GZIP checksum.</p>
+   **/
+  private CRC32 crc;
+
+  /**
+   * <p>Whether it's closed.</p>
+   **/
+  private boolean isCls;
+
+  /**
+   * <p>Only constructor.</p>
+   * @param pResp response
+   * @param pOus response stream
+   * @param pDflPl deflaters pool
+   * @param pIsGz whether it's GZIP, otherwise deflate
+   * @param pMinSz threshold size
+   **/
+  public CmprOus(final HttpServletResponse pResp, final OutputStream pOus,
+    final DflPl pDflPl, final boolean pIsGz, final int pMinSz) {
+    this.resp = pResp;
+    this.ous = pOus;
+    this.dflPl = pDflPl;
+    this.isGz = pIsGz;
+    this.buf = new byte[pMinSz];
+  }
+
+  @Override
+  public final void write(final int pByte) throws IOException {
+    this.one[0] = (byte) pByte;
+    write(this.one, 0, 1);
+  }
+
+  @Override
+  public final void write(final byte[] pBts, final int pOfs,
+    final int pLen) throws IOException {
+    if (this.isCls) {
+      throw new IOException("Stream closed!");
+    }
+    if (this.dfl == null) {
+      if (pLen <= this.buf.length - this.cnt) {
+        System.arraycopy(pBts, pOfs, this.buf, this.cnt, pLen);
+        this.cnt += pLen;
+        return;
+      }
+      start();
+    }
+    dflt(pBts, pOfs, pLen);
+  }
+
+  @Override
+  public final void flush() throws IOException {
+    if (this.dfl != null && !this.isCls) {
+      int len;
+      do {
+        len = this.dfl.deflate(this.obuf, 0, this.obuf.length,
+          Deflater.SYNC_FLUSH);
+        if (len > 0) {
+          this.ous.write(this.obuf, 0, len);
+        }
+      } while (len == this.obuf.length);
+      this.ous.flush();
+    }
+  }
+
+  @Override
+  public final void close() throws IOException {
+    if (this.isCls) {
+      return;
+    }
+    this.isCls = true;
+    try {
+      if (this.dfl == null) {
+        this.ous.write(this.buf, 0, this.cnt);
+      } else {
+        this.dfl.finish();
+        while (!this.dfl.finished()) {
+          int len = this.dfl.deflate(this.obuf, 0, this.obuf.length);
+          if (len > 0) {
+            this.ous.write(this.obuf, 0, len);
+          }
+        }
+        if (this.isGz) {
+          wrIntLe((int) this.crc.getValue());
+          wrIntLe((int) this.dfl.getBytesRead());
+        }
+      }
+    } finally {
+      if (this.dfl != null) {
+        this.dflPl.ret(this.dfl);
+        this.dfl = null;
+      }
+      this.ous.close();
+    }
+  }
+
+  /**
+   * <p>Starts compression, i.e. sets header, writes buffered data.</p>
+   * @throws IOException IOException
+   **/
+  private void start() throws IOException {
+    if (this.isGz) {
+      this.resp.setHeader("Content-Encoding", "gzip");
+    } else {
+      this.resp.setHeader("Content-Encoding", "deflate");
+    }
+    this.dfl = this.dflPl.get();
+    this.obuf = new byte[OBUFSZ];
+    if (this.isGz) {
+      this.crc = new CRC32();
+      this.ous.write(GZHDR);
+    }
+    if (this.cnt > 0) {
+      dflt(this.buf, 0, this.cnt);
+      this.cnt = 0;
+    }
+  }
+
+  /**
+   * <p>Compresses and writes data.</p>
+   * @param pBts bytes
+   * @param pOfs offset
+   * @param pLen length
+   * @throws IOException IOException
+   **/
+  private void dflt(final byte[] pBts, final int pOfs,
+    final int pLen) throws IOException {
+    if (this.isGz) {
+      this.crc.update(pBts, pOfs, pLen);
+    }
+    this.dfl.setInput(pBts, pOfs, pLen);
+    while (!this.dfl.needsInput()) {
+      int len = this.dfl.deflate(this.obuf, 0, this.obuf.length);
+      if (len > 0) {
+        this.ous.write(this.obuf, 0, len);
+      }
+    }
+  }
+
+  /**
+   * <p>Writes integer in little endian order.</p>
+   * @param pVl value
+   * @throws IOException IOException
+   **/
+  private void wrIntLe(final int pVl) throws IOException {
+    for (int i = 0; i < Integer.SIZE; i += Byte.SIZE) {
+      this.ous.write(pVl >>> i);
+    }
+  }
+}
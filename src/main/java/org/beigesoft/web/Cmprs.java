@@ -0,0 +1,201 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.web;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * <p>Servlet's response compressor. It chooses GZIP or deflate
+ * by request "Accept-Encoding" header for allowed content types.
+ * It's configured by servlet init parameters "cmprTys" - allowed
+ * content types comma separated, e.g. "text/html,text/csv,text/xml",
+ * and "cmprMin" - minimum size to compress.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class Cmprs {
+
+  /**
+   * <p>Default minimum size to compress.</p>
+   **/
+  public static final int MINSZDEF = 1024;
+
+  /**
+   * <p>Max idle deflaters in each pool.</p>
+   **/
+  private static final int PLMAX = 32;
+
+  /**
+   * <p>Allowed content types (without parameters).</p>
+   **/
+  private final Set<String> tys = new HashSet<String>();
+
+  /**
+   * <p>Minimum size to compress.</p>
+   **/
+  private final int minSz;
+
+  /**
+   * <p>GZIP deflaters pool.</p>
+   **/
+  private final DflPl gzPl = new DflPl(true, Deflater.DEFAULT_COMPRESSION,
+    PLMAX);
+
+  /**
+   * <p>Deflate (ZLIB) deflaters pool.</p>
+   **/
+  private final DflPl dfPl = new DflPl(false, Deflater.DEFAULT_COMPRESSION,
+    PLMAX);
+
+  /**
+   * <p>Only constructor.</p>
+   * @param pTys allowed content types comma separated
+   * @param pMinSz minimum size to compress
+   **/
+  public Cmprs(final String pTys, final int pMinSz) {
+    for (String ty : pTys.split(",")) {
+      String tyt = ty.trim().toLowerCase(Locale.ENGLISH);
+      if (tyt.length() > 0) {
+        this.tys.add(tyt);
+      }
+    }
+    this.minSz = pMinSz;
+  }
+
+  /**
+   * <p>Makes compressor by servlet init parameters.</p>
+   * @param pTys "cmprTys" parameter
+   * @param pMinSz "cmprMin" parameter
+   * @return compressor or NULL if compression is not configured
+   **/
+  public static Cmprs make(final String pTys, final String pMinSz) {
+    if (pTys == null) {
+      return null;
+    }
+    int msz = MINSZDEF;
+    if (pMinSz != null) {
+      msz = Integer.parseInt(pMinSz);
+    }
+    return new Cmprs(pTys, msz);
+  }
+
+  /**
+   * <p>Makes compressing response stream if content type is allowed
+   * and client accepts GZIP or deflate.</p>
+   * @param pReq request
+   * @param pResp response
+   * @param pContTy response content type
+   * @return compressing stream or NULL
+   * @throws IOException IOException
+   **/
+  public final OutputStream wrap(final HttpServletRequest pReq,
+    final HttpServletResponse pResp,
+      final String pContTy) throws IOException {
+    if (pContTy == null) {
+      return null;
+    }
+    int scIdx = pContTy.indexOf(';');
+    String ty = scIdx == -1 ? pContTy : pContTy.substring(0, scIdx);
+    if (!this.tys.contains(ty.trim().toLowerCase(Locale.ENGLISH))) {
+      return null;
+    }
+    pResp.addHeader("Vary", "Accept-Encoding");
+    String acc = pReq.getHeader("Accept-Encoding");
+    if (acc == null) {
+      return null;
+    }
+    boolean isGz = false;
+    boolean isDf = false;
+    for (String enc : acc.split(",")) {
+      String[] encPrs = enc.split(";");
+      String en = encPrs[0].trim().toLowerCase(Locale.ENGLISH);
+      if (isRfsd(encPrs)) {
+        continue;
+      }
+      if ("gzip".equals(en) || "x-gzip".equals(en)) {
+        isGz = true;
+      } else if ("deflate".equals(en)) {
+        isDf = true;
+      }
+    }
+    if (isGz) {
+      return new CmprOus(pResp, pResp.getOutputStream(), this.gzPl, true,
+        this.minSz);
+    }
+    if (isDf) {
+      return new CmprOus(pResp, pResp.getOutputStream(), this.dfPl, false,
+        this.minSz);
+    }
+    return null;
+  }
+
+  /**
+   * <p>Ends idle deflaters.</p>
+   **/
+  public final void release() {
+    this.gzPl.release();
+    this.dfPl.release();
+  }
+
+  /**
+   * <p>Checks if encoding is refused by "q=0".</p>
+   * @param pEncPrs encoding and its parameters
+   * @return if refused
+   **/
+  private boolean isRfsd(final String[] pEncPrs) {
+    for (int i = 1; i < pEncPrs.length; i++) {
+      String pr = pEncPrs[i].trim();
+      if (pr.startsWith("q=")) {
+        try {
+          return Double.parseDouble(pr.substring(2)) <= 0.0;
+        } catch (NumberFormatException e) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  //Simple getters:
+  /**
+   * <p>Getter for minSz.</p>
+   * @return int
+   **/
+  public final int getMinSz() {
+    return this.minSz;
+  }
+}
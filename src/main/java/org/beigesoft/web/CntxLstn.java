@@ -28,8 +28,10 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package org.beigesoft.web;
 
+import java.io.File;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import javax.servlet.ServletContext;
 import javax.servlet.ServletContextListener;
@@ -66,6 +68,21 @@ public class CntxLstn<RS> implements ServletContextListener {
   @Override
   public final void contextDestroyed(final ServletContextEvent sce) {
     try {
+      HndChn.rstAll(sce.getServletContext());
+      HldExr hldExr = (HldExr) sce.getServletContext()
+        .getAttribute(HldExr.CTXATTR);
+      if (hldExr != null) {
+        hldExr.release();
+      }
+      IBanLst banLst = (IBanLst) sce.getServletContext()
+        .getAttribute("banLst");
+      if (banLst != null) {
+        banLst.release();
+      }
+      SecEvs secEvs = (SecEvs) sce.getServletContext().getAttribute("secEvs");
+      if (secEvs != null) {
+        secEvs.release();
+      }
       IFctApp fct = (IFctApp) sce.getServletContext().getAttribute("IFctApp");
       if (fct != null) {
         HashMap<String, Object> rvs = new HashMap<String, Object>();
@@ -95,12 +112,133 @@ public class CntxLstn<RS> implements ServletContextListener {
     IIniBdFct<RS> inif = (IIniBdFct<RS>) inifc;
     inif.iniBd(pRvs, fct, new Ctx(pCnt));
     fct.init(pRvs, new CtxAttr(pCnt));
-    //session tracker:
-    SesTrk st = new SesTrk();
-    st.setLog(fct.getFctBlc().lazLogSec(pRvs));
-    st.setI18n(fct.getFctBlc().lazI18n(pRvs));
-    pCnt.setAttribute("sesTrk", st);
-    pCnt.setAttribute("i18n", st.getI18n());
+    //ban list, "loc" - saved into file, "rdb" - shared by cluster nodes:
+    IBanLst banLst = null;
+    String banLstTy = pCnt.getInitParameter("banLst");
+    String banLstMs = pCnt.getInitParameter("banLstMs");
+    if ("loc".equals(banLstTy)) {
+      long ms = BanLstLoc.SNPMSDEF;
+      if (banLstMs != null) {
+        ms = Long.parseLong(banLstMs);
+      }
+      File fl = new File(fct.getFctBlc().getFctDt().getLogPth(),
+        "banlst.txt");
+      banLst = new BanLstLoc(fct.getFctBlc().lazLogSec(pRvs), fl, ms);
+    } else if ("rdb".equals(banLstTy)) {
+      long ms = BanLstRdb.SYNCMSDEF;
+      if (banLstMs != null) {
+        ms = Long.parseLong(banLstMs);
+      }
+      banLst = new BanLstRdb<RS>(fct.getFctBlc().lazLogSec(pRvs),
+        fct.getFctBlc().lazOrm(pRvs).getRdb(), ms);
+    }
+    if (banLst != null) {
+      pCnt.setAttribute("banLst", banLst);
+    }
+    //security events are logged by background writer:
+    int secEvsSz = SecEvs.SZDEF;
+    String secEvsSzs = pCnt.getInitParameter("secEvsSz");
+    if (secEvsSzs != null) {
+      secEvsSz = Integer.parseInt(secEvsSzs);
+    }
+    SecEvs secEvs = new SecEvs(fct.getFctBlc().lazLogSec(pRvs), secEvsSz);
+    pCnt.setAttribute("secEvs", secEvs);
+    //top addresses by requests and failed logins for admin JSP:
+    HvyHtr hhRq = null;
+    HvyHtr hhFl = null;
+    if (!"false".equals(pCnt.getInitParameter("sesTop"))) {
+      int wid = HvyHtr.WIDDEF;
+      String wids = pCnt.getInitParameter("sesTopWid");
+      if (wids != null) {
+        wid = Integer.parseInt(wids);
+      }
+      int topSz = HvyHtr.TOPDEF;
+      String topSzs = pCnt.getInitParameter("sesTopSz");
+      if (topSzs != null) {
+        topSz = Integer.parseInt(topSzs);
+      }
+      long ageMs = HvyHtr.AGEMSDEF;
+      String ageMss = pCnt.getInitParameter("sesTopAgeMs");
+      if (ageMss != null) {
+        ageMs = Long.parseLong(ageMss);
+      }
+      hhRq = new HvyHtr(wid, topSz, ageMs);
+      hhFl = new HvyHtr(wid, topSz, ageMs);
+      pCnt.setAttribute("sesTopRq", hhRq);
+      pCnt.setAttribute("sesTopFl", hhFl);
+    }
+    //session tracker, "ip" - tracks failed logins by remote address:
+    if ("ip".equals(pCnt.getInitParameter("sesTrk"))) {
+      SesTrkIp st = new SesTrkIp();
+      st.setBanLst(banLst);
+      st.setSecEvs(secEvs);
+      st.setHhRq(hhRq);
+      st.setHhFl(hhFl);
+      st.setLog(fct.getFctBlc().lazLogSec(pRvs));
+      st.setI18n(fct.getFctBlc().lazI18n(pRvs));
+      pCnt.setAttribute("sesTrk", st);
+    } else {
+      SesTrk st = new SesTrk();
+      st.setBanLst(banLst);
+      st.setSecEvs(secEvs);
+      st.setHhRq(hhRq);
+      st.setHhFl(hhFl);
+      st.setLog(fct.getFctBlc().lazLogSec(pRvs));
+      st.setI18n(fct.getFctBlc().lazI18n(pRvs));
+      //aggregated mode, i.e. no sessions for bots and no log per session:
+      st.setIsAgr(Boolean.parseBoolean(pCnt.getInitParameter("sesTrkAgr")));
+      String botUa = pCnt.getInitParameter("sesBotUa");
+      String crPth = pCnt.getInitParameter("sesCrPth");
+      if (botUa != null || crPth != null) {
+        st.setSesPlc(new SesPlc(botUa, crPth));
+      }
+      String smpN = pCnt.getInitParameter("sesTrkSmp");
+      if (smpN != null) {
+        st.setSmpN(Long.parseLong(smpN));
+      }
+      pCnt.setAttribute("sesTrk", st);
+    }
+    pCnt.setAttribute("i18n", fct.getFctBlc().lazI18n(pRvs));
+    //handlers chains, servlets register theirs on init:
+    pCnt.setAttribute(HndChn.CTXATTR, new CopyOnWriteArrayList<HndChn<?>>());
+    //they are reset when factory is released, e.g. on settings changing:
+    fct.getFctBlc().getFctsAux().add(new FctHndChn<RS>(pCnt));
+    pCnt.setAttribute(Mtrcs.CTXATTR, new Mtrcs());
+    //executor for asynchronous servlets, threads are lazy created:
+    HldExr hldExr = new HldExr("hnds");
+    String thrs = pCnt.getInitParameter("hndsThrs");
+    if (thrs != null) {
+      hldExr.setThrs(Integer.parseInt(thrs));
+    }
+    String que = pCnt.getInitParameter("hndsQue");
+    if (que != null) {
+      hldExr.setQue(Integer.parseInt(que));
+    }
+    String tmOut = pCnt.getInitParameter("hndsTmOut");
+    if (tmOut != null) {
+      hldExr.setTmOut(Long.parseLong(tmOut));
+    }
+    hldExr.setIsVrt(Boolean.parseBoolean(pCnt.getInitParameter("hndsVrt")));
+    pCnt.setAttribute(HldExr.CTXATTR, hldExr);
     pCnt.setAttribute("IFctApp", fct);
+    //mail dispatcher parameters:
+    Map<String, String> dspPrms = new HashMap<String, String>();
+    for (String nm : new String[] {"mailDspRate", "mailDspBrst",
+      "mailDspConns", "mailDspThrs", "mailDspQue", "mailDspRates",
+        "mailDspRlyConns"}) {
+      String vl = pCnt.getInitParameter(nm);
+      if (vl != null) {
+        dspPrms.put(nm, vl);
+      }
+    }
+    for (Object fa : fct.getFctBlc().getFctsAux()) {
+      if (fa instanceof FctMail) {
+        ((FctMail<?>) fa).setDspPrms(dspPrms);
+      }
+    }
+    if (Boolean.parseBoolean(pCnt.getInitParameter("mailSpl"))) {
+      //spooling mailer replays undelivered emails on creation:
+      fct.laz(pRvs, FctMail.MAILSPL);
+    }
   }
 }
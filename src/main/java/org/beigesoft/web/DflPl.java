@@ -0,0 +1,119 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.web;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Deflater;
+
+/**
+ * <p>Bounded pool of reusable deflaters, so there is no native memory
+ * allocating/freeing per compressed response.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class DflPl {
+
+  /**
+   * <p>Whether deflaters make raw deflate data (for GZIP).</p>
+   **/
+  private final boolean nowrap;
+
+  /**
+   * <p>Compression level.</p>
+   **/
+  private final int lvl;
+
+  /**
+   * <p>Max idle deflaters.</p>
+   **/
+  private final int max;
+
+  /**
+   * <p>Idle deflaters.</p>
+   **/
+  private final Queue<Deflater> idle = new ConcurrentLinkedQueue<Deflater>();
+
+  /**
+   * <p>Idle deflaters count.</p>
+   **/
+  private final AtomicInteger idleCnt = new AtomicInteger();
+
+  /**
+   * <p>Only constructor.</p>
+   * @param pNowrap whether deflaters make raw deflate data (for GZIP)
+   * @param pLvl compression level
+   * @param pMax max idle deflaters
+   **/
+  public DflPl(final boolean pNowrap, final int pLvl, final int pMax) {
+    this.nowrap = pNowrap;
+    this.lvl = pLvl;
+    this.max = pMax;
+  }
+
+  /**
+   * <p>Gets idle or new deflater.</p>
+   * @return deflater
+   **/
+  public final Deflater get() {
+    Deflater rz = this.idle.poll();
+    if (rz == null) {
+      rz = new Deflater(this.lvl, this.nowrap);
+    } else {
+      this.idleCnt.decrementAndGet();
+    }
+    return rz;
+  }
+
+  /**
+   * <p>Returns deflater into pool or ends it if pool is full.</p>
+   * @param pDfl deflater
+   **/
+  public final void ret(final Deflater pDfl) {
+    if (this.idleCnt.incrementAndGet() <= this.max) {
+      pDfl.reset();
+      this.idle.offer(pDfl);
+    } else {
+      this.idleCnt.decrementAndGet();
+      pDfl.end();
+    }
+  }
+
+  /**
+   * <p>Ends all idle deflaters.</p>
+   **/
+  public final void release() {
+    Deflater dfl;
+    while ((dfl = this.idle.poll()) != null) {
+      this.idleCnt.decrementAndGet();
+      dfl.end();
+    }
+  }
+}
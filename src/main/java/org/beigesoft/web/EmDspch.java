@@ -0,0 +1,534 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.web;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.beigesoft.exc.ExcCode;
+import org.beigesoft.log.ILog;
+import org.beigesoft.mdlp.EmCon;
+import org.beigesoft.mdlp.EmInt;
+import org.beigesoft.mdlp.EmMsg;
+import org.beigesoft.mdlp.EmStr;
+import org.beigesoft.srv.IEmSnd;
+
+/**
+ * <p>Email dispatcher around sender that respects relay throttles.
+ * Messages are queued per account (connection's email), every account
+ * has token bucket limiter ("rate" messages per second with "brst"
+ * burst, can be overridden per account), every relay (SMTP host and port)
+ * has limited concurrent connections ("conns", can be overridden
+ * per host). Workers take accounts in round-robin order, so big
+ * campaign of one account doesn't starve others. Method send
+ * only queues message, use subm to get result.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class EmDspch implements IEmSnd {
+
+  /**
+   * <p>Default workers count.</p>
+   **/
+  public static final int THRSDEF = 4;
+
+  /**
+   * <p>Default connections per relay.</p>
+   **/
+  public static final int CONNSDEF = 2;
+
+  /**
+   * <p>Default messages per second per account.</p>
+   **/
+  public static final double RATEDEF = 1.0;
+
+  /**
+   * <p>Default burst.</p>
+   **/
+  public static final double BRSTDEF = 5.0;
+
+  /**
+   * <p>Default max queued messages.</p>
+   **/
+  public static final int QUEDEF = 10000;
+
+  /**
+   * <p>Log.</p>
+   **/
+  private final ILog log;
+
+  /**
+   * <p>Real sender.</p>
+   **/
+  private final IEmSnd mlr;
+
+  /**
+   * <p>Lock of queues.</p>
+   **/
+  private final ReentrantLock lck = new ReentrantLock();
+
+  /**
+   * <p>Signaled on new message or free relay.</p>
+   **/
+  private final Condition chg = this.lck.newCondition();
+
+  /**
+   * <p>Accounts by email, guarded by lck.</p>
+   **/
+  private final Map<String, EmAcc> accs = new HashMap<String, EmAcc>();
+
+  /**
+   * <p>Accounts with queued messages in round-robin order,
+   * guarded by lck.</p>
+   **/
+  private final ArrayDeque<EmAcc> rdy = new ArrayDeque<EmAcc>();
+
+  /**
+   * <p>Relays connections permits.</p>
+   **/
+  private final Map<String, Semaphore> rlys =
+    new ConcurrentHashMap<String, Semaphore>();
+
+  /**
+   * <p>Per account rate overrides.</p>
+   **/
+  private final Map<String, Double> accRts =
+    new ConcurrentHashMap<String, Double>();
+
+  /**
+   * <p>Per host connections overrides.</p>
+   **/
+  private final Map<String, Integer> rlyConns =
+    new ConcurrentHashMap<String, Integer>();
+
+  /**
+   * <p>Default messages per second per account, 0 means no limit.</p>
+   **/
+  private volatile double rate = RATEDEF;
+
+  /**
+   * <p>Burst, i.e. bucket capacity.</p>
+   **/
+  private volatile double brst = BRSTDEF;
+
+  /**
+   * <p>Default connections per relay.</p>
+   **/
+  private volatile int conns = CONNSDEF;
+
+  /**
+   * <p>Workers count.</p>
+   **/
+  private volatile int thrs = THRSDEF;
+
+  /**
+   * <p>Max queued messages.</p>
+   **/
+  private volatile int que = QUEDEF;
+
+  /**
+   * <p>Queued messages, guarded by lck.</p>
+   **/
+  private int qdCnt;
+
+  /**
+   * <p>Workers, guarded by lck.</p>
+   **/
+  private List<Thread> wrks;
+
+  /**
+   * <p>If released, guarded by lck.</p>
+   **/
+  private boolean isRlsd;
+
+  /**
+   * <p>Only constructor.</p>
+   * @param pLog log
+   * @param pMlr real sender
+   **/
+  public EmDspch(final ILog pLog, final IEmSnd pMlr) {
+    this.log = pLog;
+    this.mlr = pMlr;
+  }
+
+  /**
+   * <p>Queues email, failure is logged.</p>
+   * @param pRvs request scoped vars
+   * @param pMsg msg to mail
+   * @throws Exception - if queue is full
+   **/
+  @Override
+  public final void send(final Map<String, Object> pRvs,
+    final EmMsg pMsg) throws Exception {
+    subm(pMsg);
+  }
+
+  /**
+   * <p>Queues email.</p>
+   * @param pMsg msg to mail
+   * @return future result
+   * @throws Exception - if queue is full or dispatcher is released
+   **/
+  public final Future<EmSnRz> subm(final EmMsg pMsg) throws Exception {
+    final EmSnRz rz = new EmSnRz(pMsg);
+    FutureTask<EmSnRz> ft = new FutureTask<EmSnRz>(new Callable<EmSnRz>() {
+      @Override
+      public EmSnRz call() {
+        Map<String, Object> rvs = new HashMap<String, Object>();
+        try {
+          mlr.send(rvs, pMsg);
+          rz.setIsOk(true);
+        } catch (Exception e) {
+          rz.setErr(e);
+          log.error(rvs, EmDspch.class, "Can't send email "
+            + pMsg.getIid() + " from " + pMsg.getEmCn().getEml(), e);
+        }
+        return rz;
+      }
+    });
+    String eml = pMsg.getEmCn().getEml();
+    this.lck.lock();
+    try {
+      if (this.isRlsd) {
+        throw new ExcCode(ExcCode.BUSY, "mail_dispatcher_released");
+      }
+      if (this.qdCnt >= this.que) {
+        throw new ExcCode(ExcCode.BUSY, "mail_queue_full");
+      }
+      lazWrks();
+      EmAcc acc = this.accs.get(eml);
+      if (acc == null) {
+        Double rt = this.accRts.get(eml);
+        if (rt == null) {
+          rt = this.rate;
+        }
+        acc = new EmAcc(new TknBkt(rt, Math.max(1.0, this.brst)));
+        this.accs.put(eml, acc);
+      }
+      acc.jobs.addLast(ft);
+      acc.rlys.addLast(lazRly(pMsg.getEmCn()));
+      this.qdCnt++;
+      if (!acc.isRdy) {
+        acc.isRdy = true;
+        this.rdy.addLast(acc);
+      }
+      this.chg.signal();
+    } finally {
+      this.lck.unlock();
+    }
+    return ft;
+  }
+
+  /**
+   * <p>Stops workers, queued messages are discarded,
+   * further submitting is rejected.</p>
+   **/
+  public final void release() {
+    List<Thread> ws;
+    this.lck.lock();
+    try {
+      this.isRlsd = true;
+      ws = this.wrks;
+      this.wrks = null;
+      for (EmAcc acc : this.accs.values()) {
+        for (FutureTask<EmSnRz> ft : acc.jobs) {
+          ft.cancel(false);
+        }
+      }
+      this.accs.clear();
+      this.rdy.clear();
+      this.qdCnt = 0;
+    } finally {
+      this.lck.unlock();
+    }
+    if (ws != null) {
+      for (Thread w : ws) {
+        w.interrupt();
+      }
+    }
+  }
+
+  /**
+   * <p>Workers loop, it takes next allowed message in round-robin order
+   * and sends it holding relay permit.</p>
+   **/
+  private void work() {
+    while (!Thread.currentThread().isInterrupted()) {
+      FutureTask<EmSnRz> ft = null;
+      Semaphore rly = null;
+      this.lck.lock();
+      try {
+        long wt = Long.MAX_VALUE;
+        long now = System.nanoTime();
+        int cnt = this.rdy.size();
+        for (int i = 0; i < cnt && ft == null; i++) {
+          EmAcc acc = this.rdy.pollFirst();
+          long aw = acc.bkt.take(now);
+          if (aw == 0L) {
+            if (acc.rlys.peekFirst().tryAcquire()) {
+              ft = acc.jobs.pollFirst();
+              rly = acc.rlys.pollFirst();
+              this.qdCnt--;
+            } else {
+              //relay is busy, worker that frees it signals:
+              acc.bkt.refund();
+              aw = Long.MAX_VALUE;
+            }
+          }
+          if (acc.jobs.isEmpty()) {
+            acc.isRdy = false;
+          } else {
+            this.rdy.addLast(acc);
+          }
+          wt = Math.min(wt, aw);
+        }
+        if (ft == null) {
+          if (wt == Long.MAX_VALUE) {
+            this.chg.await();
+          } else {
+            this.chg.awaitNanos(wt);
+          }
+          continue;
+        }
+      } catch (InterruptedException e) {
+        break;
+      } finally {
+        this.lck.unlock();
+      }
+      try {
+        ft.run();
+      } finally {
+        rly.release();
+        this.lck.lock();
+        try {
+          this.chg.signal();
+        } finally {
+          this.lck.unlock();
+        }
+      }
+    }
+  }
+
+  /**
+   * <p>Lazy starts workers, it's invoked under lock.</p>
+   **/
+  private void lazWrks() {
+    if (this.wrks == null && !this.isRlsd) {
+      this.wrks = new ArrayList<Thread>();
+      for (int i = 0; i < this.thrs; i++) {
+        Thread th = new Thread(new Runnable() {
+          @Override
+          public void run() {
+            work();
+          }
+        }, "emdspch-" + (i + 1));
+        th.setDaemon(true);
+        th.start();
+        this.wrks.add(th);
+      }
+    }
+  }
+
+  /**
+   * <p>Lazy gets relay permits by connection's SMTP host and port.</p>
+   * @param pEmCn connection
+   * @return permits
+   **/
+  private Semaphore lazRly(final EmCon pEmCn) {
+    String hst = "";
+    String prt = "";
+    for (EmStr esp : pEmCn.getStrPrps()) {
+      if (esp.getPrNm().endsWith(".host")) {
+        hst = esp.getPrVl();
+      } else if (esp.getPrNm().endsWith(".port")) {
+        prt = esp.getPrVl();
+      }
+    }
+    for (EmInt eip : pEmCn.getIntPrps()) {
+      if (eip.getPrNm().endsWith(".port")) {
+        prt = String.valueOf(eip.getPrVl());
+      }
+    }
+    String key = hst + ":" + prt;
+    Semaphore rz = this.rlys.get(key);
+    if (rz == null) {
+      Integer cns = this.rlyConns.get(hst);
+      if (cns == null) {
+        cns = this.conns;
+      }
+      rz = new Semaphore(cns);
+      this.rlys.put(key, rz);
+    }
+    return rz;
+  }
+
+  /**
+   * <p>Overrides account's rate, it affects new accounts queues.</p>
+   * @param pEml account email
+   * @param pRate messages per second
+   **/
+  public final void putRate(final String pEml, final double pRate) {
+    this.accRts.put(pEml, pRate);
+  }
+
+  /**
+   * <p>Overrides host's connections count, it affects new relays.</p>
+   * @param pHst SMTP host
+   * @param pConns connections
+   **/
+  public final void putConns(final String pHst, final int pConns) {
+    this.rlyConns.put(pHst, pConns);
+  }
+
+  /**
+   * <p>Account queue.</p>
+   **/
+  private static final class EmAcc {
+
+    /**
+     * <p>Rate limiter.</p>
+     **/
+    private final TknBkt bkt;
+
+    /**
+     * <p>Queued messages.</p>
+     **/
+    private final ArrayDeque<FutureTask<EmSnRz>> jobs =
+      new ArrayDeque<FutureTask<EmSnRz>>();
+
+    /**
+     * <p>Relays of queued messages.</p>
+     **/
+    private final ArrayDeque<Semaphore> rlys = new ArrayDeque<Semaphore>();
+
+    /**
+     * <p>Whether it's in ready queue.</p>
+     **/
+    private boolean isRdy;
+
+    /**
+     * <p>Only constructor.</p>
+     * @param pBkt rate limiter
+     **/
+    EmAcc(final TknBkt pBkt) {
+      this.bkt = pBkt;
+    }
+  }
+
+  //Simple getters and setters:
+  /**
+   * <p>Getter for rate.</p>
+   * @return double
+   **/
+  public final double getRate() {
+    return this.rate;
+  }
+
+  /**
+   * <p>Setter for rate.</p>
+   * @param pRate reference
+   **/
+  public final void setRate(final double pRate) {
+    this.rate = pRate;
+  }
+
+  /**
+   * <p>Getter for brst.</p>
+   * @return double
+   **/
+  public final double getBrst() {
+    return this.brst;
+  }
+
+  /**
+   * <p>Setter for brst.</p>
+   * @param pBrst reference
+   **/
+  public final void setBrst(final double pBrst) {
+    this.brst = pBrst;
+  }
+
+  /**
+   * <p>Getter for conns.</p>
+   * @return int
+   **/
+  public final int getConns() {
+    return this.conns;
+  }
+
+  /**
+   * <p>Setter for conns.</p>
+   * @param pConns reference
+   **/
+  public final void setConns(final int pConns) {
+    this.conns = pConns;
+  }
+
+  /**
+   * <p>Getter for thrs.</p>
+   * @return int
+   **/
+  public final int getThrs() {
+    return this.thrs;
+  }
+
+  /**
+   * <p>Setter for thrs.</p>
+   * @param pThrs reference
+   **/
+  public final void setThrs(final int pThrs) {
+    this.thrs = pThrs;
+  }
+
+  /**
+   * <p>Getter for que.</p>
+   * @return int
+   **/
+  public final int getQue() {
+    return this.que;
+  }
+
+  /**
+   * <p>Setter for que.</p>
+   * @param pQue reference
+   **/
+  public final void setQue(final int pQue) {
+    this.que = pQue;
+  }
+}
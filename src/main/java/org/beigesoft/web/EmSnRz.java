@@ -0,0 +1,103 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.web;
+
+import org.beigesoft.mdlp.EmMsg;
+
+/**
+ * <p>Result of sending email in batch.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class EmSnRz {
+
+  /**
+   * <p>Message.</p>
+   **/
+  private final EmMsg msg;
+
+  /**
+   * <p>Whether it's sent.</p>
+   **/
+  private boolean isOk;
+
+  /**
+   * <p>Error if it isn't sent.</p>
+   **/
+  private Exception err;
+
+  /**
+   * <p>Only constructor.</p>
+   * @param pMsg message
+   **/
+  public EmSnRz(final EmMsg pMsg) {
+    this.msg = pMsg;
+  }
+
+  //Simple getters and setters:
+  /**
+   * <p>Getter for msg.</p>
+   * @return EmMsg
+   **/
+  public final EmMsg getMsg() {
+    return this.msg;
+  }
+
+  /**
+   * <p>Getter for isOk.</p>
+   * @return boolean
+   **/
+  public final boolean getIsOk() {
+    return this.isOk;
+  }
+
+  /**
+   * <p>Setter for isOk.</p>
+   * @param pIsOk reference
+   **/
+  public final void setIsOk(final boolean pIsOk) {
+    this.isOk = pIsOk;
+  }
+
+  /**
+   * <p>Getter for err.</p>
+   * @return Exception
+   **/
+  public final Exception getErr() {
+    return this.err;
+  }
+
+  /**
+   * <p>Setter for err.</p>
+   * @param pErr reference
+   **/
+  public final void setErr(final Exception pErr) {
+    this.err = pErr;
+  }
+}
@@ -0,0 +1,87 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.web;
+
+import java.util.Map;
+
+import javax.servlet.ServletContext;
+
+import org.beigesoft.fct.IFctAux;
+import org.beigesoft.fct.FctBlc;
+
+/**
+ * <p>Auxiliary factory that creates nothing, it only resets handlers
+ * chains (HndChn) of servlet context when main factory is released
+ * (e.g. on settings changing), so servlets resolve handlers again
+ * instead of invoking released ones. CntxLstn adds it.</p>
+ *
+ * @param <RS> platform dependent record set type
+ * @author Yury Demidenko
+ */
+public class FctHndChn<RS> implements IFctAux<RS> {
+
+  /**
+   * <p>Servlet context.</p>
+   **/
+  private final ServletContext ctx;
+
+  /**
+   * <p>Only constructor.</p>
+   * @param pCtx servlet context
+   **/
+  public FctHndChn(final ServletContext pCtx) {
+    this.ctx = pCtx;
+  }
+
+  /**
+   * <p>It doesn't create any bean.</p>
+   * @param pRqVs request scoped vars
+   * @param pBnNm - bean name
+   * @param pFctApp main factory
+   * @return NULL
+   * @throws Exception - an exception
+   */
+  @Override
+  public final Object crePut(final Map<String, Object> pRqVs,
+    final String pBnNm, final FctBlc<RS> pFctApp) throws Exception {
+    return null;
+  }
+
+  /**
+   * <p>Resets all handlers chains.</p>
+   * @param pRqVs request scoped vars
+   * @param pFctApp main factory
+   * @throws Exception - an exception
+   */
+  @Override
+  public final void release(final Map<String, Object> pRqVs,
+    final FctBlc<RS> pFctApp) throws Exception {
+    HndChn.rstAll(this.ctx);
+  }
+}
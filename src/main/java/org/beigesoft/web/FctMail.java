@@ -28,20 +28,69 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package org.beigesoft.web;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
+import org.beigesoft.exc.ExcCode;
 import org.beigesoft.fct.IFctAux;
 import org.beigesoft.fct.FctBlc;
 import org.beigesoft.srv.IEmSnd;
 
 /**
- * <p>Auxiliary factory for Mailer.</p>
+ * <p>Auxiliary factory for Mailer, spooling MailerSpl
+ * (bean name "IEmSndSpl"), rate limiting EmDspch
+ * (bean name "IEmSndDsp") and mail metrics (bean name "MlMtrcs").
+ * Dispatcher is configured by parameters (CntxLstn passes context
+ * init parameters): "mailDspRate" - messages per second per account,
+ * "mailDspBrst" - burst, "mailDspConns" - connections per relay,
+ * "mailDspThrs" - workers, "mailDspQue" - max queued messages,
+ * "mailDspRates" - per account rates e.g. "a@b.com=0.5,c@d.com=3",
+ * "mailDspRlyConns" - per SMTP host connections
+ * e.g. "smtp.b.com=1".</p>
  *
  * @param <RS> platform dependent record set type
  * @author Yury Demidenko
  */
 public class FctMail<RS> implements IFctAux<RS> {
 
+  /**
+   * <p>Spooling mailer bean name.</p>
+   **/
+  public static final String MAILSPL = "IEmSndSpl";
+
+  /**
+   * <p>Rate limiting dispatcher bean name.</p>
+   **/
+  public static final String MAILDSP = "IEmSndDsp";
+
+  /**
+   * <p>Mail metrics bean name.</p>
+   **/
+  public static final String MLMTRCS = "MlMtrcs";
+
+  /**
+   * <p>Dispatcher parameters.</p>
+   **/
+  private Map<String, String> dspPrms = new HashMap<String, String>();
+
+  /**
+   * <p>Created mailer, maybe NULL.</p>
+   **/
+  private Mailer mailer;
+
+  /**
+   * <p>Created spooling mailer, maybe NULL.</p>
+   **/
+  private MailerSpl mailerSpl;
+
+  /**
+   * <p>Created dispatcher, maybe NULL.</p>
+   **/
+  private EmDspch emDspch;
+
   /**
    * <p>Creates requested bean and put into given main factory.
    * The main factory is already synchronized when invokes this.</p>
@@ -57,6 +106,13 @@ public class FctMail<RS> implements IFctAux<RS> {
     Object rz = null;
     if (IEmSnd.class.getSimpleName().equals(pBnNm)) {
       rz = crPuMailer(pRqVs, pFctApp);
+    } else if (MAILSPL.equals(pBnNm)) {
+      rz = crPuMailerSpl(pRqVs, pFctApp);
+    } else if (MAILDSP.equals(pBnNm)) {
+      rz = crPuEmDspch(pRqVs, pFctApp);
+    } else if (MLMTRCS.equals(pBnNm)) {
+      rz = new MlMtrcs();
+      pFctApp.put(pRqVs, MLMTRCS, rz);
     }
     return rz;
   }
@@ -70,7 +126,18 @@ public class FctMail<RS> implements IFctAux<RS> {
   @Override
   public final void release(final Map<String, Object> pRqVs,
     final FctBlc<RS> pFctApp) throws Exception {
-    //nothing;
+    if (this.emDspch != null) {
+      this.emDspch.release();
+      this.emDspch = null;
+    }
+    if (this.mailerSpl != null) {
+      this.mailerSpl.release();
+      this.mailerSpl = null;
+    }
+    if (this.mailer != null) {
+      this.mailer.release();
+      this.mailer = null;
+    }
   }
 
   /**
@@ -84,9 +151,123 @@ public class FctMail<RS> implements IFctAux<RS> {
     final FctBlc<RS> pFctApp) throws Exception {
     Mailer mlr = new Mailer(pFctApp.lazLogStd(pRqVs));
     mlr.setAppPth(pFctApp.getFctDt().getAppPth());
+    mlr.setMlMtrcs((MlMtrcs) pFctApp.laz(pRqVs, MLMTRCS));
+    this.mailer = mlr;
     pFctApp.put(pRqVs, IEmSnd.class.getSimpleName(), mlr);
     pFctApp.lazLogStd(pRqVs).info(pRqVs, getClass(),
       IEmSnd.class.getSimpleName() + " has been created");
     return mlr;
   }
+
+  /**
+   * <p>Creates and puts into MF spooling mailer, then replays spool.</p>
+   * @param pRqVs request scoped vars
+   * @param pFctApp main factory
+   * @return MailerSpl
+   * @throws Exception - an exception
+   */
+  private MailerSpl crPuMailerSpl(final Map<String, Object> pRqVs,
+    final FctBlc<RS> pFctApp) throws Exception {
+    IEmSnd mlr = (IEmSnd) pFctApp.laz(pRqVs, IEmSnd.class.getSimpleName());
+    File dir = new File(pFctApp.getFctDt().getLogPth(), "mailspl");
+    MailerSpl rz = new MailerSpl(pFctApp.lazLogStd(pRqVs), mlr, dir);
+    //password isn't spooled, it's resolved by connection ID:
+    rz.setOrm(pFctApp.lazOrm(pRqVs), pFctApp.lazOrm(pRqVs).getRdb());
+    this.mailerSpl = rz;
+    pFctApp.put(pRqVs, MAILSPL, rz);
+    pFctApp.lazLogStd(pRqVs).info(pRqVs, getClass(),
+      MAILSPL + " has been created");
+    rz.rply();
+    return rz;
+  }
+
+  /**
+   * <p>Creates and puts into MF rate limiting dispatcher.</p>
+   * @param pRqVs request scoped vars
+   * @param pFctApp main factory
+   * @return EmDspch
+   * @throws Exception - an exception
+   */
+  private EmDspch crPuEmDspch(final Map<String, Object> pRqVs,
+    final FctBlc<RS> pFctApp) throws Exception {
+    IEmSnd mlr = (IEmSnd) pFctApp.laz(pRqVs, IEmSnd.class.getSimpleName());
+    EmDspch rz = new EmDspch(pFctApp.lazLogStd(pRqVs), mlr);
+    String prm = this.dspPrms.get("mailDspRate");
+    if (prm != null) {
+      rz.setRate(Double.parseDouble(prm));
+    }
+    prm = this.dspPrms.get("mailDspBrst");
+    if (prm != null) {
+      rz.setBrst(Double.parseDouble(prm));
+    }
+    prm = this.dspPrms.get("mailDspConns");
+    if (prm != null) {
+      rz.setConns(Integer.parseInt(prm));
+    }
+    prm = this.dspPrms.get("mailDspThrs");
+    if (prm != null) {
+      rz.setThrs(Integer.parseInt(prm));
+    }
+    prm = this.dspPrms.get("mailDspQue");
+    if (prm != null) {
+      rz.setQue(Integer.parseInt(prm));
+    }
+    prm = this.dspPrms.get("mailDspRates");
+    if (prm != null) {
+      for (String[] kv : kvs(prm)) {
+        rz.putRate(kv[0], Double.parseDouble(kv[1]));
+      }
+    }
+    prm = this.dspPrms.get("mailDspRlyConns");
+    if (prm != null) {
+      for (String[] kv : kvs(prm)) {
+        rz.putConns(kv[0], Integer.parseInt(kv[1]));
+      }
+    }
+    this.emDspch = rz;
+    pFctApp.put(pRqVs, MAILDSP, rz);
+    pFctApp.lazLogStd(pRqVs).info(pRqVs, getClass(),
+      MAILDSP + " has been created");
+    return rz;
+  }
+
+  /**
+   * <p>Splits "key=value,key=value" list.</p>
+   * @param pLst list
+   * @return pairs
+   * @throws Exception - if pair is wrong
+   **/
+  private List<String[]> kvs(final String pLst) throws Exception {
+    List<String[]> rz = new ArrayList<String[]>();
+    for (String pr : pLst.split(",")) {
+      if (pr.trim().length() > 0) {
+        String[] kv = pr.split("=");
+        if (kv.length != 2) {
+          throw new ExcCode(ExcCode.WR, "Wrong dispatcher parameter: "
+            + pLst);
+        }
+        kv[0] = kv[0].trim();
+        kv[1] = kv[1].trim();
+        rz.add(kv);
+      }
+    }
+    return rz;
+  }
+
+  //Simple getters and setters:
+  /**
+   * <p>Getter for dspPrms.</p>
+   * @return dispatcher parameters
+   **/
+  public final Map<String, String> getDspPrms() {
+    return this.dspPrms;
+  }
+
+  /**
+   * <p>Setter for dspPrms.</p>
+   * @param pDspPrms reference
+   **/
+  public final void setDspPrms(final Map<String, String> pDspPrms) {
+    this.dspPrms = pDspPrms;
+  }
 }
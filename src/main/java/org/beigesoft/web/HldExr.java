@@ -0,0 +1,402 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.web;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * <p>Holder of bounded executor that runs servlets request work
+ * (handlers chain) in asynchronous mode, so a slow DB-bound handler
+ * doesn't hold container's worker thread. Executor is lazy created on
+ * first dispatch without locking (double-checked). When executor is busy
+ * and its queue is full or holder is released, request is rejected
+ * with 503. Released holder never recreates executor.
+ * On Java 21+ it can be backed by virtual-thread-per-task executor
+ * (it's looked up with reflection, so the jar stays Java 7 compatible),
+ * then "thrs" plus "que" limits requests in work. On older JVM it falls
+ * back to the fixed pool.
+ * Worker gets response through guard (RspGrd). If container times out
+ * or fails request, then listener closes guard (it waits for worker's
+ * current output), then completes request with 503/500, so worker's
+ * further output is ignored and it never touches recycled response.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class HldExr {
+
+  /**
+   * <p>Servlet context attribute name.</p>
+   **/
+  public static final String CTXATTR = "hndsExr";
+
+  /**
+   * <p>Default threads count.</p>
+   **/
+  public static final int THRSDEF = 20;
+
+  /**
+   * <p>Default queue capacity.</p>
+   **/
+  public static final int QUEDEF = 200;
+
+  /**
+   * <p>Idle thread keep alive, seconds.</p>
+   **/
+  private static final long KEEPALV = 60L;
+
+  /**
+   * <p>Threads names prefix.</p>
+   **/
+  private final String thrNm;
+
+  /**
+   * <p>Threads count.</p>
+   **/
+  private volatile int thrs = THRSDEF;
+
+  /**
+   * <p>Queue capacity.</p>
+   **/
+  private volatile int que = QUEDEF;
+
+  /**
+   * <p>Asynchronous request timeout, milliseconds,
+   * 0 means no timeout, negative - container's default.</p>
+   **/
+  private volatile long tmOut = 0L;
+
+  /**
+   * <p>Whether to use virtual threads if JVM supports them.</p>
+   **/
+  private volatile boolean isVrt;
+
+  /**
+   * <p>Executor, lazy created.</p>
+   **/
+  private volatile ExecutorService exr;
+
+  /**
+   * <p>Permits of requests in work for unbounded virtual-thread executor,
+   * NULL for fixed pool, it's published by exr.</p>
+   **/
+  private Semaphore inWrk;
+
+  /**
+   * <p>Whether it's released, guarded by this.</p>
+   **/
+  private boolean isRlsd;
+
+  /**
+   * <p>Only constructor.</p>
+   * @param pThrNm threads names prefix
+   **/
+  public HldExr(final String pThrNm) {
+    this.thrNm = pThrNm;
+  }
+
+  /**
+   * <p>Starts asynchronous mode and executes request work
+   * on this executor. Async context is completed after work.</p>
+   * @param pReq Http Servlet Request
+   * @param pResp Http Servlet Response
+   * @param pWrk request work
+   * @throws IOException IOException
+   **/
+  public final void dspch(final HttpServletRequest pReq,
+    final HttpServletResponse pResp, final IWrkRq pWrk) throws IOException {
+    ExecutorService ex;
+    try {
+      ex = lazExr();
+    } catch (RejectedExecutionException e) {
+      pResp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+      return;
+    }
+    final Semaphore iw = this.inWrk;
+    if (iw != null && !iw.tryAcquire()) {
+      pResp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+      return;
+    }
+    final AsyncContext ac;
+    try {
+      ac = pReq.startAsync(pReq, pResp);
+    } catch (RuntimeException e) {
+      if (iw != null) {
+        iw.release();
+      }
+      throw e;
+    }
+    //whether async context is completed (by worker or listener):
+    final AtomicBoolean isDn = new AtomicBoolean();
+    final RspGrd rg = new RspGrd(pResp);
+    ac.addListener(new AsyncListener() {
+      @Override
+      public void onComplete(final AsyncEvent pEv) {
+        isDn.set(true);
+      }
+      @Override
+      public void onTimeout(final AsyncEvent pEv) throws IOException {
+        cmpl(ac, rg, isDn, HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+      }
+      @Override
+      public void onError(final AsyncEvent pEv) throws IOException {
+        cmpl(ac, rg, isDn, HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+      }
+      @Override
+      public void onStartAsync(final AsyncEvent pEv) {
+        //nothing
+      }
+    });
+    if (this.tmOut >= 0L) {
+      ac.setTimeout(this.tmOut);
+    }
+    try {
+      ex.execute(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            pWrk.doWork(pReq, rg);
+          } catch (Exception e) {
+            if (!isDn.get()) {
+              e.printStackTrace();
+            }
+          } finally {
+            if (iw != null) {
+              iw.release();
+            }
+            cmpl(ac, rg, isDn, 0);
+          }
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      if (iw != null) {
+        iw.release();
+      }
+      cmpl(ac, rg, isDn, HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+    }
+  }
+
+  /**
+   * <p>Completes async context only once, container may have
+   * completed (recycled) it on timeout or error. Worker's response
+   * guard is closed before, so error is sent when worker has stopped
+   * writing.</p>
+   * @param pAc async context
+   * @param pRg worker's response guard
+   * @param pIsDn whether it's completed
+   * @param pSts error status to send or 0
+   **/
+  private void cmpl(final AsyncContext pAc, final RspGrd pRg,
+    final AtomicBoolean pIsDn, final int pSts) {
+    if (!pIsDn.compareAndSet(false, true)) {
+      return;
+    }
+    pRg.cls();
+    try {
+      if (pSts != 0) {
+        HttpServletResponse resp = (HttpServletResponse) pAc.getResponse();
+        if (!resp.isCommitted()) {
+          resp.sendError(pSts);
+        }
+      }
+    } catch (Exception e) {
+      e.printStackTrace();
+    } finally {
+      try {
+        pAc.complete();
+      } catch (IllegalStateException e) {
+        //already completed by container
+      }
+    }
+  }
+
+  /**
+   * <p>Lazy gets executor, it locks only on creation.</p>
+   * @return executor
+   * @throws RejectedExecutionException if it's released
+   **/
+  public final ExecutorService lazExr() {
+    ExecutorService rz = this.exr;
+    if (rz == null) {
+      synchronized (this) {
+        if (this.isRlsd) {
+          throw new RejectedExecutionException(this.thrNm + " released");
+        }
+        rz = this.exr;
+        if (rz == null) {
+          rz = creExr();
+          this.exr = rz;
+        }
+      }
+    }
+    return rz;
+  }
+
+  /**
+   * <p>Creates executor, it's invoked under lock.</p>
+   * @return executor
+   **/
+  private ExecutorService creExr() {
+    ExecutorService rz = null;
+    if (this.isVrt) {
+      rz = creVrtExr();
+      if (rz != null) {
+        this.inWrk = new Semaphore(this.thrs + this.que);
+      }
+    }
+    if (rz == null) {
+      final AtomicInteger thrNum = new AtomicInteger();
+      ThreadFactory tf = new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable pRn) {
+          Thread th = new Thread(pRn, thrNm + "-" + thrNum.incrementAndGet());
+          th.setDaemon(true);
+          return th;
+        }
+      };
+      ThreadPoolExecutor tpe = new ThreadPoolExecutor(this.thrs, this.thrs,
+        KEEPALV, TimeUnit.SECONDS,
+          new ArrayBlockingQueue<Runnable>(this.que), tf);
+      tpe.allowCoreThreadTimeOut(true);
+      rz = tpe;
+    }
+    return rz;
+  }
+
+  /**
+   * <p>Shutdowns executor if it was created,
+   * then executor is never recreated.</p>
+   **/
+  public final synchronized void release() {
+    this.isRlsd = true;
+    if (this.exr != null) {
+      this.exr.shutdown();
+      this.exr = null;
+      this.inWrk = null;
+    }
+  }
+
+  /**
+   * <p>Creates virtual-thread-per-task executor if JVM supports it.</p>
+   * @return executor or NULL
+   **/
+  private ExecutorService creVrtExr() {
+    try {
+      Method mt = Executors.class
+        .getMethod("newVirtualThreadPerTaskExecutor");
+      return (ExecutorService) mt.invoke(null);
+    } catch (NoSuchMethodException e) {
+      return null;
+    } catch (Exception e) {
+      e.printStackTrace();
+      return null;
+    }
+  }
+
+  //Simple getters and setters:
+  /**
+   * <p>Getter for thrs.</p>
+   * @return int
+   **/
+  public final int getThrs() {
+    return this.thrs;
+  }
+
+  /**
+   * <p>Setter for thrs.</p>
+   * @param pThrs reference
+   **/
+  public final void setThrs(final int pThrs) {
+    this.thrs = pThrs;
+  }
+
+  /**
+   * <p>Getter for que.</p>
+   * @return int
+   **/
+  public final int getQue() {
+    return this.que;
+  }
+
+  /**
+   * <p>Setter for que.</p>
+   * @param pQue reference
+   **/
+  public final void setQue(final int pQue) {
+    this.que = pQue;
+  }
+
+  /**
+   * <p>Getter for isVrt.</p>
+   * @return boolean
+   **/
+  public final boolean getIsVrt() {
+    return this.isVrt;
+  }
+
+  /**
+   * <p>Setter for isVrt.</p>
+   * @param pIsVrt reference
+   **/
+  public final void setIsVrt(final boolean pIsVrt) {
+    this.isVrt = pIsVrt;
+  }
+
+  /**
+   * <p>Getter for tmOut.</p>
+   * @return long
+   **/
+  public final long getTmOut() {
+    return this.tmOut;
+  }
+
+  /**
+   * <p>Setter for tmOut.</p>
+   * @param pTmOut reference
+   **/
+  public final void setTmOut(final long pTmOut) {
+    this.tmOut = pTmOut;
+  }
+}
@@ -0,0 +1,244 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.web;
+
+import java.util.List;
+import java.util.Map;
+import java.lang.reflect.Array;
+
+import javax.servlet.ServletContext;
+
+import org.beigesoft.fct.IFctApp;
+
+/**
+ * <p>Chain of request handlers resolved from the app factory once,
+ * then they are kept in immutable array, so servlet doesn't invoke
+ * factory's string-keyed lookup on every request. Chain is resolved
+ * again after resetting (factory releasing or reconfiguring)
+ * or when servlet got another factory.</p>
+ *
+ * @param <T> handler type
+ * @author Yury Demidenko
+ */
+public class HndChn<T> {
+
+  /**
+   * <p>Servlet context attribute name of list of all chains.</p>
+   **/
+  public static final String CTXATTR = "hndChns";
+
+  /**
+   * <p>Handler type.</p>
+   **/
+  private final Class<T> hndCls;
+
+  /**
+   * <p>Request handlers names.</p>
+   **/
+  private final String[] hndNms;
+
+  /**
+   * <p>Handlers latency histograms in handlers order.</p>
+   **/
+  private volatile Hstg[] hstgs;
+
+  /**
+   * <p>Resolved handlers with their factory, NULL if not yet or reset.</p>
+   **/
+  private volatile RsvHnds<T> rsvHnds;
+
+  /**
+   * <p>Resolved handlers holder to publish factory and handlers
+   * atomically.</p>
+   * @param <T> handler type
+   **/
+  private static final class RsvHnds<T> {
+
+    /**
+     * <p>Factory that resolved handlers.</p>
+     **/
+    private final IFctApp fct;
+
+    /**
+     * <p>Handlers.</p>
+     **/
+    private final T[] hnds;
+
+    /**
+     * <p>Only constructor.</p>
+     * @param pFct factory
+     * @param pHnds handlers
+     **/
+    private RsvHnds(final IFctApp pFct, final T[] pHnds) {
+      this.fct = pFct;
+      this.hnds = pHnds;
+    }
+  }
+
+  /**
+   * <p>Only constructor.</p>
+   * @param pHndCls handler type
+   * @param pHndNms handlers names comma separated, maybe NULL
+   **/
+  public HndChn(final Class<T> pHndCls, final String pHndNms) {
+    this.hndCls = pHndCls;
+    if (pHndNms == null || "".equals(pHndNms.trim())) {
+      this.hndNms = new String[0];
+    } else {
+      this.hndNms = pHndNms.split(",");
+    }
+    Hstg[] hsa = new Hstg[this.hndNms.length];
+    for (int i = 0; i < hsa.length; i++) {
+      hsa[i] = new Hstg("", this.hndNms[i]);
+    }
+    this.hstgs = hsa;
+  }
+
+  /**
+   * <p>Lazy gets resolved handlers. Returned array must not be changed.</p>
+   * @param pRqVs request scoped vars
+   * @param pFct factory
+   * @return handlers in invocation order
+   * @throws Exception - an exception
+   **/
+  public final T[] lazHnds(final Map<String, Object> pRqVs,
+    final IFctApp pFct) throws Exception {
+    RsvHnds<T> rh = this.rsvHnds;
+    if (rh == null || rh.fct != pFct) {
+      rh = rslv(pRqVs, pFct);
+    }
+    return rh.hnds;
+  }
+
+  /**
+   * <p>Resets resolved handlers, e.g. when factory is releasing
+   * or reconfiguring.</p>
+   **/
+  public final void rst() {
+    this.rsvHnds = null;
+  }
+
+  /**
+   * <p>Registers this chain into servlet context chains list
+   * (made by CntxLstn), so it will be reset on factory releasing
+   * by FctHndChn.
+   * It also registers handlers histograms into context metrics.</p>
+   * @param pCtx servlet context
+   * @param pSrvNm servlet name
+   **/
+  public final void reg(final ServletContext pCtx, final String pSrvNm) {
+    List<HndChn<?>> chns = lazChns(pCtx);
+    if (chns != null) {
+      chns.add(this);
+    }
+    Mtrcs mtrcs = (Mtrcs) pCtx.getAttribute(Mtrcs.CTXATTR);
+    if (mtrcs != null) {
+      Hstg[] hsa = new Hstg[this.hndNms.length];
+      for (int i = 0; i < hsa.length; i++) {
+        hsa[i] = mtrcs.lazHstg(pSrvNm, this.hndNms[i]);
+      }
+      this.hstgs = hsa;
+    }
+  }
+
+  /**
+   * <p>Resets and unregisters this chain.</p>
+   * @param pCtx servlet context
+   **/
+  public final void unreg(final ServletContext pCtx) {
+    rst();
+    List<HndChn<?>> chns = lazChns(pCtx);
+    if (chns != null) {
+      chns.remove(this);
+    }
+  }
+
+  /**
+   * <p>Resets all registered chains.</p>
+   * @param pCtx servlet context
+   **/
+  public static void rstAll(final ServletContext pCtx) {
+    List<HndChn<?>> chns = lazChns(pCtx);
+    if (chns != null) {
+      for (HndChn<?> hc : chns) {
+        hc.rst();
+      }
+    }
+  }
+
+  /**
+   * <p>Gets chains list from servlet context.</p>
+   * @param pCtx servlet context
+   * @return list or NULL
+   **/
+  private static List<HndChn<?>> lazChns(final ServletContext pCtx) {
+    @SuppressWarnings("unchecked")
+    List<HndChn<?>> chns = (List<HndChn<?>>) pCtx.getAttribute(CTXATTR);
+    return chns;
+  }
+
+  /**
+   * <p>Resolves handlers.</p>
+   * @param pRqVs request scoped vars
+   * @param pFct factory
+   * @return resolved handlers
+   * @throws Exception - an exception
+   **/
+  private synchronized RsvHnds<T> rslv(final Map<String, Object> pRqVs,
+    final IFctApp pFct) throws Exception {
+    RsvHnds<T> rh = this.rsvHnds;
+    if (rh == null || rh.fct != pFct) {
+      @SuppressWarnings("unchecked")
+      T[] hnds = (T[]) Array.newInstance(this.hndCls, this.hndNms.length);
+      for (int i = 0; i < this.hndNms.length; i++) {
+        hnds[i] = this.hndCls.cast(pFct.laz(pRqVs, this.hndNms[i]));
+      }
+      rh = new RsvHnds<T>(pFct, hnds);
+      this.rsvHnds = rh;
+    }
+    return rh;
+  }
+
+  //Simple getters:
+  /**
+   * <p>Getter for hndNms.</p>
+   * @return handlers names
+   **/
+  public final String[] getHndNms() {
+    return this.hndNms.clone();
+  }
+
+  /**
+   * <p>Getter for hstgs. Returned array must not be changed.</p>
+   * @return handlers histograms in handlers order
+   **/
+  public final Hstg[] getHstgs() {
+    return this.hstgs;
+  }
+}
@@ -0,0 +1,212 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.web;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Lock-free latency histogram with logarithmic buckets, every power of
+ * two is split on 4 sub-buckets (relative error up to 25%).
+ * Adding value doesn't allocate memory.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class Hstg {
+
+  /**
+   * <p>Sub-buckets bits.</p>
+   **/
+  private static final int SUBBITS = 2;
+
+  /**
+   * <p>Sub-buckets count.</p>
+   **/
+  private static final int SUBCNT = 1 << SUBBITS;
+
+  /**
+   * <p>Buckets count.</p>
+   **/
+  private static final int BCKTS = Long.SIZE * SUBCNT;
+
+  /**
+   * <p>Servlet name.</p>
+   **/
+  private final String srvNm;
+
+  /**
+   * <p>Handler name.</p>
+   **/
+  private final String hndNm;
+
+  /**
+   * <p>Buckets counts.</p>
+   **/
+  private final AtomicLongArray bckts = new AtomicLongArray(BCKTS);
+
+  /**
+   * <p>Sum of all values.</p>
+   **/
+  private final AtomicLong sum = new AtomicLong();
+
+  /**
+   * <p>Only constructor.</p>
+   * @param pSrvNm servlet name
+   * @param pHndNm handler name
+   **/
+  public Hstg(final String pSrvNm, final String pHndNm) {
+    this.srvNm = pSrvNm;
+    this.hndNm = pHndNm;
+  }
+
+  /**
+   * <p>Adds value.</p>
+   * @param pVl value, e.g. nanoseconds
+   **/
+  public final void add(final long pVl) {
+    long vl = pVl < 0L ? 0L : pVl;
+    this.bckts.incrementAndGet(idx(vl));
+    this.sum.addAndGet(vl);
+  }
+
+  /**
+   * <p>Makes snapshot of buckets.</p>
+   * @return buckets counts
+   **/
+  public final long[] snap() {
+    long[] rz = new long[BCKTS];
+    for (int i = 0; i < BCKTS; i++) {
+      rz[i] = this.bckts.get(i);
+    }
+    return rz;
+  }
+
+  /**
+   * <p>Evaluates values count in snapshot.</p>
+   * @param pSnap snapshot
+   * @return count
+   **/
+  public static long cnt(final long[] pSnap) {
+    long rz = 0L;
+    for (long c : pSnap) {
+      rz += c;
+    }
+    return rz;
+  }
+
+  /**
+   * <p>Evaluates quantile (upper bound of its bucket) in snapshot.</p>
+   * @param pSnap snapshot
+   * @param pQnt quantile, e.g. 0.99
+   * @return value or 0 if empty
+   **/
+  public static long qnt(final long[] pSnap, final double pQnt) {
+    long tot = cnt(pSnap);
+    if (tot == 0L) {
+      return 0L;
+    }
+    long trg = (long) Math.ceil(pQnt * tot);
+    if (trg < 1L) {
+      trg = 1L;
+    }
+    long cum = 0L;
+    for (int i = 0; i < pSnap.length; i++) {
+      cum += pSnap[i];
+      if (cum >= trg) {
+        return upBnd(i);
+      }
+    }
+    return upBnd(pSnap.length - 1);
+  }
+
+  /**
+   * <p>Evaluates bucket index of value.</p>
+   * @param pVl not negative value
+   * @return index
+   **/
+  public static int idx(final long pVl) {
+    if (pVl < SUBCNT) {
+      return (int) pVl;
+    }
+    int msb = Long.SIZE - 1 - Long.numberOfLeadingZeros(pVl);
+    int sub = (int) (pVl >>> (msb - SUBBITS)) & (SUBCNT - 1);
+    return ((msb - SUBBITS + 1) << SUBBITS) | sub;
+  }
+
+  /**
+   * <p>Evaluates lower bound of bucket.</p>
+   * @param pIdx bucket index
+   * @return lower bound
+   **/
+  public static long lwBnd(final int pIdx) {
+    if (pIdx < SUBCNT) {
+      return pIdx;
+    }
+    int msb = (pIdx >>> SUBBITS) + SUBBITS - 1;
+    long sub = pIdx & (SUBCNT - 1);
+    return (1L << msb) | (sub << (msb - SUBBITS));
+  }
+
+  /**
+   * <p>Evaluates upper bound of bucket.</p>
+   * @param pIdx bucket index
+   * @return upper bound
+   **/
+  public static long upBnd(final int pIdx) {
+    if (pIdx >= BCKTS - 1 || lwBnd(pIdx + 1) <= 0L) {
+      return Long.MAX_VALUE;
+    }
+    return lwBnd(pIdx + 1) - 1L;
+  }
+
+  //Simple getters:
+  /**
+   * <p>Getter for srvNm.</p>
+   * @return String
+   **/
+  public final String getSrvNm() {
+    return this.srvNm;
+  }
+
+  /**
+   * <p>Getter for hndNm.</p>
+   * @return String
+   **/
+  public final String getHndNm() {
+    return this.hndNm;
+  }
+
+  /**
+   * <p>Getter for sum.</p>
+   * @return sum of values
+   **/
+  public final long getSum() {
+    return this.sum.get();
+  }
+}
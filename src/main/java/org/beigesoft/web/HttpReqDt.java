@@ -28,23 +28,92 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package org.beigesoft.web;
 
+import java.math.BigDecimal;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
 import javax.servlet.http.Cookie;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
+import org.beigesoft.exc.ExcCode;
 import org.beigesoft.mdl.IReqDt;
 import org.beigesoft.mdl.Cokie;
 
 /**
- * <p>Wrapper (adapter) of HttpServletRequest/HttpServletResponse.</p>
+ * <p>Wrapper (adapter) of HttpServletRequest/HttpServletResponse.
+ * Request cookies are parsed once into open-addressing index by name.
+ * Set cookies are pending until servlet flushes them by flsCooks,
+ * so many handlers don't re-scan cookies and don't add the same
+ * cookie many times.
+ * Attributes are held locally (well-known "rvs", "srvlRd", "rnd" in
+ * fields, others in map) and published into request only if they are
+ * in export list (servlet init parameter "attrsExp", comma separated,
+ * e.g. "rvs,filesUpl"), i.e. ones needed by JSP. NULL export list means
+ * that all attributes are published. Missing local attribute (except
+ * well-known ones) is read from request, e.g. one set by filter.
+ * Typed parameter accessors parse numbers and booleans straight from
+ * characters, BigDecimal, enum and date values are cached per request.
+ * Missing or empty parameter gives default value, malformed one
+ * throws ExcCode WRPR "wrong_parameters" with parameter name as short
+ * message.</p>
  *
  * @author Yury Demidenko
  */
 public class HttpReqDt implements IReqDt {
 
+  /**
+   * <p>Decimal radix.</p>
+   **/
+  private static final int RDX = 10;
+
+  /**
+   * <p>ISO date length, e.g. "2019-01-31".</p>
+   **/
+  private static final int DTLEN = 10;
+
+  /**
+   * <p>ISO date-time without seconds length, e.g. "2019-01-31T23:59".</p>
+   **/
+  private static final int DTMLEN = 16;
+
+  /**
+   * <p>ISO date-time with seconds length.</p>
+   **/
+  private static final int DTSLEN = 19;
+
+  /**
+   * <p>Month start in ISO date.</p>
+   **/
+  private static final int MONST = 5;
+
+  /**
+   * <p>Day start in ISO date.</p>
+   **/
+  private static final int DAYST = 8;
+
+  /**
+   * <p>Hour start in ISO date-time.</p>
+   **/
+  private static final int HRST = 11;
+
+  /**
+   * <p>Minute start in ISO date-time.</p>
+   **/
+  private static final int MINST = 14;
+
+  /**
+   * <p>Second start in ISO date-time.</p>
+   **/
+  private static final int SECST = 17;
+
   /**
    * <p>Http Servlet Request to adapt.</p>
    **/
@@ -56,14 +125,107 @@ public class HttpReqDt implements IReqDt {
   private final HttpServletResponse httpResp;
 
   /**
-   * <p>Only constructor.</p>
+   * <p>Attributes to publish into request, NULL means all.</p>
+   **/
+  private final Set<String> attrsExp;
+
+  /**
+   * <p>Request scoped variables attribute "rvs".</p>
+   **/
+  private Object rvs;
+
+  /**
+   * <p>Redirect servlet attribute "srvlRd".</p>
+   **/
+  private Object srvlRd;
+
+  /**
+   * <p>JSP name attribute "rnd".</p>
+   **/
+  private Object rnd;
+
+  /**
+   * <p>Other attributes, NULL if none.</p>
+   **/
+  private Map<String, Object> attrs;
+
+  /**
+   * <p>Parsed parameters objects, NULL if none.</p>
+   **/
+  private Map<String, Object> prsd;
+
+  /**
+   * <p>Request cookies, NULL before parsing or if there are none.</p>
+   **/
+  private Cookie[] rqCks;
+
+  /**
+   * <p>Whether request cookies are parsed.</p>
+   **/
+  private boolean isCkPrs;
+
+  /**
+   * <p>Index of request cookies by name, cookie position plus 1,
+   * 0 means empty slot, size is power of 2.</p>
+   **/
+  private int[] ckIdx;
+
+  /**
+   * <p>Cached cookies.</p>
+   **/
+  private Cokie[] cokies;
+
+  /**
+   * <p>Pending cookies to write, name - value, NULL if none.</p>
+   **/
+  private Map<String, String> pndCks;
+
+  /**
+   * <p>Whether set cookie is written immediately, e.g. for handler
+   * that writes response itself.</p>
+   **/
+  private boolean isCkImd;
+
+  /**
+   * <p>Constructor that publishes all attributes into request.</p>
    * @param pHttpReq reference
    * @param pHttpResp reference
    **/
   public HttpReqDt(final HttpServletRequest pHttpReq,
     final HttpServletResponse pHttpResp) {
+    this(pHttpReq, pHttpResp, null);
+  }
+
+  /**
+   * <p>Constructor with export list.</p>
+   * @param pHttpReq reference
+   * @param pHttpResp reference
+   * @param pAttrsExp attributes to publish into request, NULL means all
+   **/
+  public HttpReqDt(final HttpServletRequest pHttpReq,
+    final HttpServletResponse pHttpResp, final Set<String> pAttrsExp) {
     this.httpReq = pHttpReq;
     this.httpResp = pHttpResp;
+    this.attrsExp = pAttrsExp;
+  }
+
+  /**
+   * <p>Makes export list by servlet init parameter "attrsExp".</p>
+   * @param pAttrsExp attributes names comma separated
+   * @return export list or NULL to publish all attributes
+   **/
+  public static Set<String> mkAttrsExp(final String pAttrsExp) {
+    if (pAttrsExp == null) {
+      return null;
+    }
+    Set<String> rz = new HashSet<String>();
+    for (String nm : pAttrsExp.split(",")) {
+      String nmt = nm.trim();
+      if (nmt.length() > 0) {
+        rz.add(nmt);
+      }
+    }
+    return rz;
   }
 
   /**
@@ -95,6 +257,276 @@ public class HttpReqDt implements IReqDt {
     return httpReq.getParameterMap();
   }
 
+  /**
+   * <p>Gets long parameter.</p>
+   * @param pParamName Parameter Name
+   * @param pDfl default value
+   * @return parameter or default if it's missing
+   * @throws ExcCode if it's malformed
+   **/
+  public final long getParamLong(final String pParamName,
+    final long pDfl) throws ExcCode {
+    String vl = this.httpReq.getParameter(pParamName);
+    if (vl == null || vl.length() == 0) {
+      return pDfl;
+    }
+    return prsLong(pParamName, vl);
+  }
+
+  /**
+   * <p>Gets int parameter.</p>
+   * @param pParamName Parameter Name
+   * @param pDfl default value
+   * @return parameter or default if it's missing
+   * @throws ExcCode if it's malformed
+   **/
+  public final int getParamInt(final String pParamName,
+    final int pDfl) throws ExcCode {
+    String vl = this.httpReq.getParameter(pParamName);
+    if (vl == null || vl.length() == 0) {
+      return pDfl;
+    }
+    long rz = prsLong(pParamName, vl);
+    if (rz > Integer.MAX_VALUE || rz < Integer.MIN_VALUE) {
+      throw wrPrm(pParamName);
+    }
+    return (int) rz;
+  }
+
+  /**
+   * <p>Gets boolean parameter, "true", "on", "yes", "1" are true,
+   * "false", "off", "no", "0" are false (case insensitive).</p>
+   * @param pParamName Parameter Name
+   * @param pDfl default value
+   * @return parameter or default if it's missing
+   * @throws ExcCode if it's malformed
+   **/
+  public final boolean getParamBln(final String pParamName,
+    final boolean pDfl) throws ExcCode {
+    String vl = this.httpReq.getParameter(pParamName);
+    if (vl == null || vl.length() == 0) {
+      return pDfl;
+    }
+    if ("true".equalsIgnoreCase(vl) || "on".equalsIgnoreCase(vl)
+      || "yes".equalsIgnoreCase(vl) || "1".equals(vl)) {
+      return true;
+    }
+    if ("false".equalsIgnoreCase(vl) || "off".equalsIgnoreCase(vl)
+      || "no".equalsIgnoreCase(vl) || "0".equals(vl)) {
+      return false;
+    }
+    throw wrPrm(pParamName);
+  }
+
+  /**
+   * <p>Gets BigDecimal parameter, it's cached.</p>
+   * @param pParamName Parameter Name
+   * @param pDfl default value
+   * @return parameter or default if it's missing
+   * @throws ExcCode if it's malformed
+   **/
+  public final BigDecimal getParamBd(final String pParamName,
+    final BigDecimal pDfl) throws ExcCode {
+    Object ch = getPrsd(pParamName);
+    if (ch instanceof BigDecimal) {
+      return (BigDecimal) ch;
+    }
+    String vl = this.httpReq.getParameter(pParamName);
+    if (vl == null || vl.length() == 0) {
+      return pDfl;
+    }
+    BigDecimal rz;
+    try {
+      rz = new BigDecimal(vl);
+    } catch (NumberFormatException e) {
+      throw wrPrm(pParamName);
+    }
+    putPrsd(pParamName, rz);
+    return rz;
+  }
+
+  /**
+   * <p>Gets enum parameter by constant name, it's cached.</p>
+   * @param <E> enum type
+   * @param pParamName Parameter Name
+   * @param pCls enum class
+   * @param pDfl default value
+   * @return parameter or default if it's missing
+   * @throws ExcCode if it's malformed
+   **/
+  public final <E extends Enum<E>> E getParamEnm(final String pParamName,
+    final Class<E> pCls, final E pDfl) throws ExcCode {
+    Object ch = getPrsd(pParamName);
+    if (pCls.isInstance(ch)) {
+      return pCls.cast(ch);
+    }
+    String vl = this.httpReq.getParameter(pParamName);
+    if (vl == null || vl.length() == 0) {
+      return pDfl;
+    }
+    E rz;
+    try {
+      rz = Enum.valueOf(pCls, vl);
+    } catch (IllegalArgumentException e) {
+      throw wrPrm(pParamName);
+    }
+    putPrsd(pParamName, rz);
+    return rz;
+  }
+
+  /**
+   * <p>Gets ISO date parameter in local time zone, i.e. "yyyy-MM-dd",
+   * "yyyy-MM-ddTHH:mm" or "yyyy-MM-ddTHH:mm:ss" (HTML date and
+   * datetime-local inputs), it's cached.</p>
+   * @param pParamName Parameter Name
+   * @param pDfl default value
+   * @return parameter (new instance) or default if it's missing
+   * @throws ExcCode if it's malformed
+   **/
+  public final Date getParamDt(final String pParamName,
+    final Date pDfl) throws ExcCode {
+    Object ch = getPrsd(pParamName);
+    if (ch instanceof Date) {
+      return new Date(((Date) ch).getTime());
+    }
+    String vl = this.httpReq.getParameter(pParamName);
+    if (vl == null || vl.length() == 0) {
+      return pDfl;
+    }
+    int len = vl.length();
+    if (len != DTLEN && len != DTMLEN && len != DTSLEN
+      || vl.charAt(MONST - 1) != '-' || vl.charAt(DAYST - 1) != '-') {
+      throw wrPrm(pParamName);
+    }
+    int yr = dgts(vl, 0, MONST - 1);
+    int mon = dgts(vl, MONST, DAYST - 1);
+    int day = dgts(vl, DAYST, DTLEN);
+    int hr = 0;
+    int min = 0;
+    int sec = 0;
+    if (len > DTLEN) {
+      char sp = vl.charAt(DTLEN);
+      if (sp != 'T' && sp != ' ' || vl.charAt(MINST - 1) != ':') {
+        throw wrPrm(pParamName);
+      }
+      hr = dgts(vl, HRST, MINST - 1);
+      min = dgts(vl, MINST, DTMLEN);
+      if (len == DTSLEN) {
+        if (vl.charAt(SECST - 1) != ':') {
+          throw wrPrm(pParamName);
+        }
+        sec = dgts(vl, SECST, DTSLEN);
+      }
+    }
+    if (yr < 0 || mon < 0 || day < 0 || hr < 0 || min < 0 || sec < 0) {
+      throw wrPrm(pParamName);
+    }
+    Calendar cal = new GregorianCalendar();
+    cal.setLenient(false);
+    cal.clear();
+    cal.set(yr, mon - 1, day, hr, min, sec);
+    Date rz;
+    try {
+      rz = cal.getTime();
+    } catch (IllegalArgumentException e) {
+      throw wrPrm(pParamName);
+    }
+    putPrsd(pParamName, rz);
+    return new Date(rz.getTime());
+  }
+
+  /**
+   * <p>Parses long straight from characters.</p>
+   * @param pParamName Parameter Name
+   * @param pVl not empty value
+   * @return long
+   * @throws ExcCode if it's malformed or overflowed
+   **/
+  private long prsLong(final String pParamName,
+    final CharSequence pVl) throws ExcCode {
+    int len = pVl.length();
+    int i = 0;
+    boolean isNeg = false;
+    char c = pVl.charAt(0);
+    if (c == '-' || c == '+') {
+      isNeg = c == '-';
+      i++;
+      if (len == 1) {
+        throw wrPrm(pParamName);
+      }
+    }
+    //accumulates negative, so MIN_VALUE is parsed too:
+    long lmt = isNeg ? Long.MIN_VALUE : -Long.MAX_VALUE;
+    long mulMin = lmt / RDX;
+    long rz = 0L;
+    for (; i < len; i++) {
+      int dg = pVl.charAt(i) - '0';
+      if (dg < 0 || dg >= RDX || rz < mulMin) {
+        throw wrPrm(pParamName);
+      }
+      rz *= RDX;
+      if (rz < lmt + dg) {
+        throw wrPrm(pParamName);
+      }
+      rz -= dg;
+    }
+    return isNeg ? rz : -rz;
+  }
+
+  /**
+   * <p>Parses non-negative int from digits.</p>
+   * @param pVl value
+   * @param pFr start index
+   * @param pTo end index exclusive
+   * @return int or -1 if there is not digit
+   **/
+  private int dgts(final CharSequence pVl, final int pFr, final int pTo) {
+    int rz = 0;
+    for (int i = pFr; i < pTo; i++) {
+      int dg = pVl.charAt(i) - '0';
+      if (dg < 0 || dg >= RDX) {
+        return -1;
+      }
+      rz = rz * RDX + dg;
+    }
+    return rz;
+  }
+
+  /**
+   * <p>Makes wrong parameter exception.</p>
+   * @param pParamName Parameter Name
+   * @return exception
+   **/
+  private ExcCode wrPrm(final String pParamName) {
+    ExcCode rz = new ExcCode(ExcCode.WRPR, "wrong_parameters");
+    rz.setShMsg(pParamName);
+    return rz;
+  }
+
+  /**
+   * <p>Gets cached parsed parameter.</p>
+   * @param pParamName Parameter Name
+   * @return parsed parameter or NULL
+   **/
+  private Object getPrsd(final String pParamName) {
+    if (this.prsd == null) {
+      return null;
+    }
+    return this.prsd.get(pParamName);
+  }
+
+  /**
+   * <p>Caches parsed parameter.</p>
+   * @param pParamName Parameter Name
+   * @param pVl parsed parameter
+   **/
+  private void putPrsd(final String pParamName, final Object pVl) {
+    if (this.prsd == null) {
+      this.prsd = new HashMap<String, Object>();
+    }
+    this.prsd.put(pParamName, pVl);
+  }
+
   /**
    * <p>Getter of user name.</p>
    * @return User name if he/she logged
@@ -138,13 +570,28 @@ public class HttpReqDt implements IReqDt {
   }
 
   /**
-   * <p>Getter for attribute.</p>
+   * <p>Getter for attribute. Well-known ones are only local,
+   * missing other one is read from request.</p>
    * @param pAttrName Attribute name
    * @return Attribute
    **/
   @Override
   public final Object getAttr(final String pAttrName) {
-    return httpReq.getAttribute(pAttrName);
+    if ("srvlRd".equals(pAttrName)) {
+      return this.srvlRd;
+    } else if ("rvs".equals(pAttrName)) {
+      return this.rvs;
+    } else if ("rnd".equals(pAttrName)) {
+      return this.rnd;
+    }
+    Object rz = null;
+    if (this.attrs != null) {
+      rz = this.attrs.get(pAttrName);
+    }
+    if (rz == null) {
+      rz = this.httpReq.getAttribute(pAttrName);
+    }
+    return rz;
   }
 
   /**
@@ -155,7 +602,14 @@ public class HttpReqDt implements IReqDt {
   @Override
   public final void setAttr(final String pAttrName,
     final Object pAttribute) {
-    httpReq.setAttribute(pAttrName, pAttribute);
+    if (pAttribute == null) {
+      remAttr(pAttrName);
+      return;
+    }
+    putLoc(pAttrName, pAttribute);
+    if (this.attrsExp == null || this.attrsExp.contains(pAttrName)) {
+      this.httpReq.setAttribute(pAttrName, pAttribute);
+    }
   }
 
   /**
@@ -164,66 +618,114 @@ public class HttpReqDt implements IReqDt {
    **/
   @Override
   public final void remAttr(final String pAttrName) {
-    httpReq.removeAttribute(pAttrName);
+    Object old = putLoc(pAttrName, null);
+    //request one may be set by filter:
+    if (old == null || this.attrsExp == null
+      || this.attrsExp.contains(pAttrName)) {
+      this.httpReq.removeAttribute(pAttrName);
+    }
+  }
+
+  /**
+   * <p>Puts or removes local attribute.</p>
+   * @param pAttrName Attribute name
+   * @param pAttribute reference or NULL to remove
+   * @return old value
+   **/
+  private Object putLoc(final String pAttrName, final Object pAttribute) {
+    Object old;
+    if ("srvlRd".equals(pAttrName)) {
+      old = this.srvlRd;
+      this.srvlRd = pAttribute;
+    } else if ("rvs".equals(pAttrName)) {
+      old = this.rvs;
+      this.rvs = pAttribute;
+    } else if ("rnd".equals(pAttrName)) {
+      old = this.rnd;
+      this.rnd = pAttribute;
+    } else if (pAttribute != null) {
+      if (this.attrs == null) {
+        this.attrs = new HashMap<String, Object>();
+      }
+      old = this.attrs.put(pAttrName, pAttribute);
+    } else if (this.attrs != null) {
+      old = this.attrs.remove(pAttrName);
+    } else {
+      old = null;
+    }
+    return old;
   }
 
   /**
-   * <p>Getter for cookies.</p>
+   * <p>Getter for cookies, it's cached.</p>
    * @return Cokie[]
    **/
   public final Cokie[] getCookies() {
-    if (this.httpReq.getCookies() == null) {
+    prsCks();
+    if (this.rqCks == null) {
       return null;
     }
-    Cokie[] cokies = new Cokie[this.httpReq.getCookies().length];
-    int i = 0;
-    for (Cookie q : this.httpReq.getCookies()) {
-      Cokie c = new Cokie();
-      c.setNme(q.getName());
-      c.setVal(q.getValue());
-      cokies[i++] = c;
+    if (this.cokies == null) {
+      this.cokies = new Cokie[this.rqCks.length];
+      for (int i = 0; i < this.rqCks.length; i++) {
+        Cokie c = new Cokie();
+        c.setNme(this.rqCks[i].getName());
+        c.setVal(this.rqCks[i].getValue());
+        this.cokies[i] = c;
+      }
     }
-    return cokies;
+    return this.cokies;
   }
 
   /**
-   * <p>Get cookie value by name.</p>
+   * <p>Get cookie value by name, pending value has priority.</p>
    * @param pName Name
    * @return cookie value or null
    **/
   @Override
   public final String getCookVl(final String pName) {
-    if (this.httpReq.getCookies() == null) {
-      return null;
+    if (this.pndCks != null && this.pndCks.containsKey(pName)) {
+      return this.pndCks.get(pName);
     }
-    for (Cookie co : this.httpReq.getCookies()) {
-      if (co.getName().equals(pName)) {
-        return co.getValue();
-      }
+    int pos = fndCk(pName);
+    if (pos == -1) {
+      return null;
     }
-    return null;
+    return this.rqCks[pos].getValue();
   }
 
   /**
-   * <p>Set(add/change) cookie value.</p>
+   * <p>Set(add/change) cookie value. It's written into response
+   * by flsCooks, the last value of the same name wins.</p>
    * @param pName Name
    * @param pValue Value
    **/
   @Override
   public final void setCookVl(final String pName, final String pValue) {
-    Cookie cookie = null;
-    if (this.httpReq.getCookies() != null) {
-      for (Cookie co : this.httpReq.getCookies()) {
-        if (co.getName().equals(pName)) {
-          cookie = co;
-          cookie.setValue(pValue);
-          break;
-        }
+    if (this.pndCks == null) {
+      this.pndCks = new LinkedHashMap<String, String>();
+    }
+    this.pndCks.put(pName, pValue);
+    int pos = fndCk(pName);
+    if (pos != -1) {
+      this.rqCks[pos].setValue(pValue);
+      if (this.cokies != null) {
+        this.cokies[pos].setVal(pValue);
       }
     }
-    if (cookie == null) {
-      cookie = new Cookie(pName, pValue);
-      cookie.setMaxAge(Integer.MAX_VALUE);
+    if (this.isCkImd) {
+      flsCooks();
+    }
+  }
+
+  /**
+   * <p>Writes pending cookies into response. Servlet invokes it
+   * before response is committed, i.e. before JSP include or redirect.
+   * Before handler that writes response servlet sets isCkImd.</p>
+   **/
+  public final void flsCooks() {
+    if (this.pndCks == null || this.pndCks.isEmpty()) {
+      return;
     }
     //application path is either root "/" of server address
     //or WEB application name e.g. /bsa-433
@@ -231,8 +733,74 @@ public class HttpReqDt implements IReqDt {
     if ("".equals(path)) {
       path = "/";
     }
-    cookie.setPath(path);
-    this.httpResp.addCookie(cookie);
+    for (Map.Entry<String, String> ent : this.pndCks.entrySet()) {
+      Cookie cookie;
+      int pos = fndCk(ent.getKey());
+      if (pos != -1) {
+        cookie = this.rqCks[pos];
+      } else {
+        cookie = new Cookie(ent.getKey(), ent.getValue());
+        cookie.setMaxAge(Integer.MAX_VALUE);
+      }
+      cookie.setPath(path);
+      this.httpResp.addCookie(cookie);
+    }
+    this.pndCks.clear();
+  }
+
+  /**
+   * <p>Finds request cookie position by name.</p>
+   * @param pName Name
+   * @return position or -1
+   **/
+  private int fndCk(final String pName) {
+    prsCks();
+    if (this.rqCks == null) {
+      return -1;
+    }
+    int msk = this.ckIdx.length - 1;
+    int i = pName.hashCode() & msk;
+    while (this.ckIdx[i] != 0) {
+      int pos = this.ckIdx[i] - 1;
+      if (this.rqCks[pos].getName().equals(pName)) {
+        return pos;
+      }
+      i = (i + 1) & msk;
+    }
+    return -1;
+  }
+
+  /**
+   * <p>Parses request cookies into index once.
+   * The first cookie of the same name wins like in linear scan.</p>
+   **/
+  private void prsCks() {
+    if (this.isCkPrs) {
+      return;
+    }
+    this.isCkPrs = true;
+    this.rqCks = this.httpReq.getCookies();
+    if (this.rqCks == null) {
+      return;
+    }
+    int sz = Integer.highestOneBit(Math.max(this.rqCks.length, 1)) << 2;
+    this.ckIdx = new int[sz];
+    int msk = sz - 1;
+    for (int pos = 0; pos < this.rqCks.length; pos++) {
+      String nme = this.rqCks[pos].getName();
+      int i = nme.hashCode() & msk;
+      boolean isDbl = false;
+      while (this.ckIdx[i] != 0) {
+        if (this.rqCks[this.ckIdx[i] - 1].getName().equals(nme)) {
+          isDbl = true;
+          break;
+        }
+        i = (i + 1) & msk;
+      }
+      if (!isDbl) {
+        this.ckIdx[i] = pos + 1;
+      }
+    }
   }
 
   /**
@@ -314,4 +882,23 @@ public class HttpReqDt implements IReqDt {
   public final HttpServletResponse getHttpResp() {
     return this.httpResp;
   }
+
+  /**
+   * <p>Getter for isCkImd.</p>
+   * @return boolean
+   **/
+  public final boolean getIsCkImd() {
+    return this.isCkImd;
+  }
+
+  /**
+   * <p>Setter for isCkImd, it flushes pending cookies.</p>
+   * @param pIsCkImd reference
+   **/
+  public final void setIsCkImd(final boolean pIsCkImd) {
+    this.isCkImd = pIsCkImd;
+    if (pIsCkImd) {
+      flsCooks();
+    }
+  }
 }
@@ -0,0 +1,353 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.web;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Heavy hitters (e.g. top offending IPs) in constant memory.
+ * Counts are held by lock-free count-min sketch, top-K keeps only
+ * K candidate keys, their counts are estimated by sketch on reading.
+ * Counts are halved every "ageMs", so old attacks fade out.
+ * It's exposed as servlet context attribute for admin JSP.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class HvyHtr {
+
+  /**
+   * <p>Default sketch width, power of 2.</p>
+   **/
+  public static final int WIDDEF = 1024;
+
+  /**
+   * <p>Default top size.</p>
+   **/
+  public static final int TOPDEF = 20;
+
+  /**
+   * <p>Default aging period, milliseconds.</p>
+   **/
+  public static final long AGEMSDEF = 3600000L;
+
+  /**
+   * <p>Sketch depth, i.e. rows count.</p>
+   **/
+  private static final int DPT = 4;
+
+  /**
+   * <p>Hash mixing constants.</p>
+   **/
+  private static final int MX1 = 0x85ebca6b;
+
+  /**
+   * <p>Hash mixing constants.</p>
+   **/
+  private static final int MX2 = 0xc2b2ae35;
+
+  /**
+   * <p>Row hash seed.</p>
+   **/
+  private static final int SEED = 0x9e3779b9;
+
+  /**
+   * <p>Hash char constants.</p>
+   **/
+  private static final int MC1 = 0xcc9e2d51;
+
+  /**
+   * <p>Hash char constants.</p>
+   **/
+  private static final int MC2 = 0x1b873593;
+
+  /**
+   * <p>Hash step constants.</p>
+   **/
+  private static final int MS1 = 5;
+
+  /**
+   * <p>Hash step constants.</p>
+   **/
+  private static final int MS2 = 0xe6546b64;
+
+  /**
+   * <p>Hash char rotation.</p>
+   **/
+  private static final int RT1 = 15;
+
+  /**
+   * <p>Hash step rotation.</p>
+   **/
+  private static final int RT2 = 13;
+
+  /**
+   * <p>Hash mixing shift.</p>
+   **/
+  private static final int SH1 = 16;
+
+  /**
+   * <p>Hash mixing shift.</p>
+   **/
+  private static final int SH2 = 13;
+
+  /**
+   * <p>Sketch cells, row by row.</p>
+   **/
+  private final AtomicLongArray cells;
+
+  /**
+   * <p>Row width mask.</p>
+   **/
+  private final int msk;
+
+  /**
+   * <p>Top size.</p>
+   **/
+  private final int topSz;
+
+  /**
+   * <p>Aging period, milliseconds.</p>
+   **/
+  private final long ageMs;
+
+  /**
+   * <p>Top candidates, value isn't used.</p>
+   **/
+  private final ConcurrentMap<String, Boolean> top =
+    new ConcurrentHashMap<String, Boolean>();
+
+  /**
+   * <p>Lower bound of smallest top count, guarded by this
+   * for writing.</p>
+   **/
+  private volatile long topMin;
+
+  /**
+   * <p>Last aging time.</p>
+   **/
+  private final AtomicLong ageTm = new AtomicLong(System.currentTimeMillis());
+
+  /**
+   * <p>Total additions.</p>
+   **/
+  private final StrCnt tot = new StrCnt();
+
+  /**
+   * <p>Only constructor.</p>
+   * @param pWid sketch width, it's rounded up to power of 2
+   * @param pTopSz top size
+   * @param pAgeMs aging period, milliseconds
+   **/
+  public HvyHtr(final int pWid, final int pTopSz, final long pAgeMs) {
+    int wid = Integer.highestOneBit(Math.max(pWid, 2) - 1) << 1;
+    this.cells = new AtomicLongArray(wid * DPT);
+    this.msk = wid - 1;
+    this.topSz = pTopSz;
+    this.ageMs = pAgeMs;
+  }
+
+  /**
+   * <p>Counts key.</p>
+   * @param pKey key, e.g. remote address
+   **/
+  public final void add(final String pKey) {
+    if (pKey == null) {
+      return;
+    }
+    this.tot.inc();
+    age();
+    long est = Long.MAX_VALUE;
+    for (int i = 0; i < DPT; i++) {
+      est = Math.min(est, this.cells.incrementAndGet(idx(pKey, i)));
+    }
+    if (est <= this.topMin || this.top.containsKey(pKey)) {
+      return;
+    }
+    synchronized (this) {
+      if (this.top.containsKey(pKey)) {
+        return;
+      }
+      if (this.top.size() < this.topSz) {
+        this.top.put(pKey, Boolean.TRUE);
+        return;
+      }
+      String minKey = null;
+      long min = Long.MAX_VALUE;
+      long min2 = Long.MAX_VALUE;
+      for (String key : this.top.keySet()) {
+        long cnt = est(key);
+        if (cnt < min) {
+          min2 = min;
+          min = cnt;
+          minKey = key;
+        } else if (cnt < min2) {
+          min2 = cnt;
+        }
+      }
+      if (est > min) {
+        this.top.remove(minKey);
+        this.top.put(pKey, Boolean.TRUE);
+        this.topMin = Math.min(est, min2);
+      } else {
+        this.topMin = min;
+      }
+    }
+  }
+
+  /**
+   * <p>Estimates key count, it may be over-estimated.</p>
+   * @param pKey key
+   * @return count
+   **/
+  public final long est(final String pKey) {
+    long est = Long.MAX_VALUE;
+    for (int i = 0; i < DPT; i++) {
+      est = Math.min(est, this.cells.get(idx(pKey, i)));
+    }
+    return est;
+  }
+
+  /**
+   * <p>Makes top list ordered by count descending.</p>
+   * @return top list
+   **/
+  public final List<IpCnt> lstTop() {
+    List<IpCnt> rz = new ArrayList<IpCnt>(this.topSz);
+    for (String key : this.top.keySet()) {
+      long cnt = est(key);
+      if (cnt > 0L) {
+        rz.add(new IpCnt(key, cnt));
+      }
+    }
+    Collections.sort(rz, new Comparator<IpCnt>() {
+      @Override
+      public int compare(final IpCnt pIc1, final IpCnt pIc2) {
+        if (pIc1.getCnt() == pIc2.getCnt()) {
+          return 0;
+        }
+        return pIc1.getCnt() > pIc2.getCnt() ? -1 : 1;
+      }
+    });
+    return rz;
+  }
+
+  /**
+   * <p>Halves counts if aging period is over, only one thread does it.
+   * Keys which counts become 0 leave top.</p>
+   **/
+  private void age() {
+    long now = System.currentTimeMillis();
+    long lst = this.ageTm.get();
+    if (now - lst < this.ageMs || !this.ageTm.compareAndSet(lst, now)) {
+      return;
+    }
+    for (int i = 0; i < this.cells.length(); i++) {
+      long vl;
+      do {
+        vl = this.cells.get(i);
+      } while (vl != 0L && !this.cells.compareAndSet(i, vl, vl >>> 1));
+    }
+    synchronized (this) {
+      this.topMin = this.topMin >>> 1;
+      for (String key : this.top.keySet()) {
+        if (est(key) == 0L) {
+          this.top.remove(key);
+        }
+      }
+    }
+  }
+
+  /**
+   * <p>Evaluates cell index by independent hash of each row,
+   * i.e. murmur3 of key's chars with row's seed, so keys that collide
+   * in one row hardly collide in others.</p>
+   * @param pKey key
+   * @param pRow row
+   * @return cell index
+   **/
+  private int idx(final String pKey, final int pRow) {
+    return pRow * (this.msk + 1) + (hsh(pKey, pRow) & this.msk);
+  }
+
+  /**
+   * <p>Evaluates row's hash, i.e. murmur3 of key's chars
+   * with row's seed.</p>
+   * @param pKey key
+   * @param pRow row
+   * @return hash
+   **/
+  static int hsh(final String pKey, final int pRow) {
+    int h = (pRow + 1) * SEED;
+    for (int i = 0; i < pKey.length(); i++) {
+      int k = pKey.charAt(i) * MC1;
+      k = Integer.rotateLeft(k, RT1) * MC2;
+      h = Integer.rotateLeft(h ^ k, RT2) * MS1 + MS2;
+    }
+    return mix(h ^ pKey.length());
+  }
+
+  /**
+   * <p>Mixes hash bits (murmur3 finalizer).</p>
+   * @param pH hash
+   * @return mixed hash
+   **/
+  private static int mix(final int pH) {
+    int h = pH;
+    h ^= h >>> SH1;
+    h *= MX1;
+    h ^= h >>> SH2;
+    h *= MX2;
+    h ^= h >>> SH1;
+    return h;
+  }
+
+  //Simple getters:
+  /**
+   * <p>Getter for tot.</p>
+   * @return total additions
+   **/
+  public final long getTot() {
+    return this.tot.sum();
+  }
+
+  /**
+   * <p>Getter for topSz.</p>
+   * @return int
+   **/
+  public final int getTopSz() {
+    return this.topSz;
+  }
+}
@@ -0,0 +1,74 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.web;
+
+/**
+ * <p>Remote address with estimated count, e.g. top offender.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class IpCnt {
+
+  /**
+   * <p>Remote address.</p>
+   **/
+  private final String ip;
+
+  /**
+   * <p>Estimated count, it may be over-estimated.</p>
+   **/
+  private final long cnt;
+
+  /**
+   * <p>Only constructor.</p>
+   * @param pIp remote address
+   * @param pCnt estimated count
+   **/
+  public IpCnt(final String pIp, final long pCnt) {
+    this.ip = pIp;
+    this.cnt = pCnt;
+  }
+
+  //Simple getters:
+  /**
+   * <p>Getter for ip.</p>
+   * @return String
+   **/
+  public final String getIp() {
+    return this.ip;
+  }
+
+  /**
+   * <p>Getter for cnt.</p>
+   * @return long
+   **/
+  public final long getCnt() {
+    return this.cnt;
+  }
+}
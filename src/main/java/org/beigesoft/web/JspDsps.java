@@ -0,0 +1,147 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.web;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.servlet.RequestDispatcher;
+import javax.servlet.ServletContext;
+
+import org.beigesoft.exc.ExcCode;
+
+/**
+ * <p>JSP request dispatchers by view name "rnd". JSP folder "dirJsp"
+ * (including sub-folders) is scanned on init, so only existing views
+ * are allowed and their dispatchers are resolved once. Unknown view
+ * is rejected without path making. If folder can't be scanned
+ * (e.g. there are only precompiled JSP), then dispatcher is resolved
+ * by path on every request as before.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class JspDsps {
+
+  /**
+   * <p>JSP extension.</p>
+   **/
+  private static final String JSPEXT = ".jsp";
+
+  /**
+   * <p>Servlet context.</p>
+   **/
+  private final ServletContext ctx;
+
+  /**
+   * <p>JSP folder, e.g. "/WEB-INF/jsp/".</p>
+   **/
+  private final String dirJsp;
+
+  /**
+   * <p>Dispatchers by view name, NULL if folder isn't scanned.</p>
+   **/
+  private final Map<String, RequestDispatcher> dsps;
+
+  /**
+   * <p>Only constructor, it scans JSP folder.</p>
+   * @param pCtx servlet context
+   * @param pDirJsp JSP folder
+   **/
+  public JspDsps(final ServletContext pCtx, final String pDirJsp) {
+    this.ctx = pCtx;
+    this.dirJsp = pDirJsp;
+    Map<String, RequestDispatcher> dss = null;
+    if (pDirJsp != null && pDirJsp.endsWith("/")) {
+      dss = new HashMap<String, RequestDispatcher>();
+      scan(pDirJsp, dss);
+      if (dss.isEmpty()) {
+        dss = null;
+      }
+    }
+    if (dss == null) {
+      this.dsps = null;
+    } else {
+      this.dsps = Collections.unmodifiableMap(dss);
+    }
+  }
+
+  /**
+   * <p>Gets dispatcher by view name.</p>
+   * @param pRnd view name, e.g. "index" or "acc/ledger"
+   * @return dispatcher
+   * @throws ExcCode if view is unknown
+   **/
+  public final RequestDispatcher get(final String pRnd) throws ExcCode {
+    if (this.dsps == null) {
+      return this.ctx.getRequestDispatcher(this.dirJsp + pRnd + JSPEXT);
+    }
+    RequestDispatcher rz = this.dsps.get(pRnd);
+    if (rz == null) {
+      ExcCode ex = new ExcCode(ExcCode.WRPR, "wrong_parameters");
+      ex.setShMsg("rnd");
+      throw ex;
+    }
+    return rz;
+  }
+
+  /**
+   * <p>Scans folder recursively.</p>
+   * @param pDir folder
+   * @param pDss dispatchers
+   **/
+  private void scan(final String pDir,
+    final Map<String, RequestDispatcher> pDss) {
+    Set<String> pths = this.ctx.getResourcePaths(pDir);
+    if (pths == null) {
+      return;
+    }
+    for (String pth : pths) {
+      if (pth.endsWith("/")) {
+        scan(pth, pDss);
+      } else if (pth.endsWith(JSPEXT)) {
+        RequestDispatcher rd = this.ctx.getRequestDispatcher(pth);
+        if (rd != null) {
+          pDss.put(pth.substring(this.dirJsp.length(),
+            pth.length() - JSPEXT.length()), rd);
+        }
+      }
+    }
+  }
+
+  //Simple getters:
+  /**
+   * <p>Checks if views are scanned, i.e. unknown ones are rejected.</p>
+   * @return if scanned
+   **/
+  public final boolean getIsScnd() {
+    return this.dsps != null;
+  }
+}
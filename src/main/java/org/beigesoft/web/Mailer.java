@@ -28,31 +28,41 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package org.beigesoft.web;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Properties;
-import java.io.File;
 
 import javax.mail.Session;
 import javax.mail.Transport;
 import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
 import javax.mail.Multipart;
 import javax.mail.internet.InternetAddress;
 import javax.mail.internet.MimeMessage;
 import javax.mail.internet.MimeBodyPart;
 import javax.mail.internet.MimeMultipart;
 import javax.activation.CommandMap;
+import javax.activation.DataHandler;
+import javax.activation.DataSource;
 import javax.activation.MailcapCommandMap;
 
 import org.beigesoft.log.ILog;
+import org.beigesoft.mdlp.EmCon;
 import org.beigesoft.mdlp.EmMsg;
 import org.beigesoft.mdlp.EmAtch;
-import org.beigesoft.mdlp.EmInt;
-import org.beigesoft.mdlp.EmStr;
 import org.beigesoft.srv.IEmSnd;
 
 /**
- * <p>Service that sends email with Java-mail API.</p>
+ * <p>Service that sends email with Java-mail API.
+ * Sessions and connected transports are reused through pool.
+ * If metrics are set, then it records phases time (MIME building,
+ * attachments, connecting, sending), sent messages and bytes, failures
+ * per connection.</p>
  *
  * @author Yury Demidenko
  */
@@ -69,6 +79,21 @@ public class Mailer implements IEmSnd {
    **/
   private String appPth;
 
+  /**
+   * <p>Transports pool.</p>
+   **/
+  private final TrnsPl trnsPl = new TrnsPl();
+
+  /**
+   * <p>Attachments resolver.</p>
+   **/
+  private final AtchRsv atchRsv = new AtchRsv();
+
+  /**
+   * <p>Delivery metrics, maybe NULL.</p>
+   **/
+  private MlMtrcs mlMtrcs;
+
   /**
    * <p>Only constructor.</p>
    * @param pLog log
@@ -102,15 +127,202 @@ public class Mailer implements IEmSnd {
   @Override
   public final void send(final Map<String, Object> pRvs,
     final EmMsg pMsg) throws Exception {
-    Properties props = new Properties();
-    for (EmStr esp : pMsg.getEmCn().getStrPrps()) {
-      props.put(esp.getPrNm(), esp.getPrVl());
+    MlCnMtr mt = null;
+    if (this.mlMtrcs != null) {
+      mt = this.mlMtrcs.lazCn(pMsg.getEmCn().getEml());
+    }
+    try {
+      String key = this.trnsPl.key(pMsg.getEmCn());
+      Message msg = mkMsg(this.trnsPl.lazSes(key, pMsg.getEmCn()), pMsg,
+        null);
+      Transport tr = getTr(key, pMsg.getEmCn(), mt);
+      try {
+        sendTr(tr, msg, mt);
+      } catch (SendFailedException e) {
+        this.trnsPl.ret(key, tr);
+        throw e;
+      } catch (MessagingException e) {
+        //message may be already accepted, so it isn't resent here,
+        //stale pooled connection is probed by pool before sending:
+        this.trnsPl.cls(tr);
+        throw e;
+      }
+      this.trnsPl.ret(key, tr);
+      if (mt != null) {
+        mt.sent(msgSz(pMsg));
+      }
+    } catch (Exception e) {
+      if (mt != null) {
+        mt.fail(e);
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * <p>Sends many emails, e.g. mass mailing. Messages are grouped by
+   * connection, and each group is sent through single transport.
+   * Attachment with the same path is made once per batch and reused
+   * by all its messages. Failed message doesn't stop batch.</p>
+   * @param pRvs request scoped vars
+   * @param pMsgs msgs to mail
+   * @return results in the same order
+   **/
+  public final List<EmSnRz> sendBlk(final Map<String, Object> pRvs,
+    final Collection<EmMsg> pMsgs) {
+    List<EmSnRz> rz = new ArrayList<EmSnRz>(pMsgs.size());
+    Map<String, List<EmSnRz>> grps = new LinkedHashMap<String, List<EmSnRz>>();
+    for (EmMsg msg : pMsgs) {
+      EmSnRz snRz = new EmSnRz(msg);
+      rz.add(snRz);
+      String key = this.trnsPl.key(msg.getEmCn());
+      List<EmSnRz> grp = grps.get(key);
+      if (grp == null) {
+        grp = new ArrayList<EmSnRz>();
+        grps.put(key, grp);
+      }
+      grp.add(snRz);
+    }
+    //MIME parts are shared only inside this thread:
+    Map<String, MimeBodyPart> atchs = new HashMap<String, MimeBodyPart>();
+    for (Map.Entry<String, List<EmSnRz>> ent : grps.entrySet()) {
+      sendGrp(ent.getKey(), ent.getValue(), atchs);
+    }
+    return rz;
+  }
+
+  /**
+   * <p>Sends messages of the same connection through single transport.
+   * Failed message isn't resent, because server may already accept it,
+   * broken transport is closed and next message gets other one.</p>
+   * @param pKey connection key
+   * @param pGrp messages
+   * @param pAtchs shared attachments
+   **/
+  private void sendGrp(final String pKey, final List<EmSnRz> pGrp,
+    final Map<String, MimeBodyPart> pAtchs) {
+    EmCon emCn = pGrp.get(0).getMsg().getEmCn();
+    MlCnMtr mt = null;
+    if (this.mlMtrcs != null) {
+      mt = this.mlMtrcs.lazCn(emCn.getEml());
+    }
+    Session sess = this.trnsPl.lazSes(pKey, emCn);
+    Transport tr = null;
+    try {
+      for (EmSnRz snRz : pGrp) {
+        Message msg;
+        try {
+          msg = mkMsg(sess, snRz.getMsg(), pAtchs);
+        } catch (Exception e) {
+          snRz.setErr(e);
+          if (mt != null) {
+            mt.fail(e);
+          }
+          continue;
+        }
+        try {
+          if (tr == null) {
+            tr = getTr(pKey, emCn, mt);
+          }
+          sendTr(tr, msg, mt);
+          snRz.setIsOk(true);
+          if (mt != null) {
+            mt.sent(msgSz(snRz.getMsg()));
+          }
+        } catch (SendFailedException e) {
+          snRz.setErr(e);
+        } catch (MessagingException e) {
+          if (tr != null) {
+            this.trnsPl.cls(tr);
+            tr = null;
+          }
+          snRz.setErr(e);
+        }
+        if (mt != null && snRz.getErr() != null) {
+          mt.fail(snRz.getErr());
+        }
+      }
+    } finally {
+      if (tr != null) {
+        this.trnsPl.ret(pKey, tr);
+      }
+    }
+  }
+
+  /**
+   * <p>Gets connected transport from pool and records its time.</p>
+   * @param pKey connection key
+   * @param pEmCn connection
+   * @param pMt metrics or NULL
+   * @return transport
+   * @throws MessagingException MessagingException
+   **/
+  private Transport getTr(final String pKey, final EmCon pEmCn,
+    final MlCnMtr pMt) throws MessagingException {
+    long stm = System.nanoTime();
+    Transport rz = this.trnsPl.get(pKey, pEmCn);
+    if (pMt != null) {
+      pMt.phs(MlCnMtr.CON, System.nanoTime() - stm);
     }
-    for (EmInt eip : pMsg.getEmCn().getIntPrps()) {
-      props.put(eip.getPrNm(), eip.getPrVl());
+    return rz;
+  }
+
+  /**
+   * <p>Sends message through transport and records its time.</p>
+   * @param pTr transport
+   * @param pMsg message
+   * @param pMt metrics or NULL
+   * @throws MessagingException MessagingException
+   **/
+  private void sendTr(final Transport pTr, final Message pMsg,
+    final MlCnMtr pMt) throws MessagingException {
+    long stm = System.nanoTime();
+    try {
+      pTr.sendMessage(pMsg, pMsg.getAllRecipients());
+    } finally {
+      if (pMt != null) {
+        pMt.phs(MlCnMtr.DAT, System.nanoTime() - stm);
+      }
+    }
+  }
+
+  /**
+   * <p>Evaluates message content size, i.e. text and attachments.</p>
+   * @param pMsg message
+   * @return size in bytes
+   **/
+  private long msgSz(final EmMsg pMsg) {
+    long rz = 0L;
+    if (pMsg.getTxt() != null) {
+      rz += pMsg.getTxt().length();
+    }
+    for (EmAtch attch : pMsg.getAtchs()) {
+      rz += this.atchRsv.len(attch.getPth());
     }
-    Session sess = Session.getInstance(props);
-    Message msg = new MimeMessage(sess);
+    return rz;
+  }
+
+  /**
+   * <p>Closes pooled transports.</p>
+   **/
+  public final void release() {
+    this.trnsPl.release();
+    this.atchRsv.clear();
+  }
+
+  /**
+   * <p>Makes MIME message ready to send.</p>
+   * @param pSess session
+   * @param pMsg msg to mail
+   * @param pAtchs shared attachments by path or NULL
+   * @return MIME message
+   * @throws Exception - an exception
+   **/
+  public final Message mkMsg(final Session pSess, final EmMsg pMsg,
+    final Map<String, MimeBodyPart> pAtchs) throws Exception {
+    long stm = System.nanoTime();
+    long atchNs = 0L;
+    Message msg = new MimeMessage(pSess);
     msg.setFrom(new InternetAddress(pMsg.getEmCn().getEml()));
     if (pMsg.getRcps().size() == 1) {
       msg.setRecipient(Message.RecipientType.TO,
@@ -130,29 +342,37 @@ public class Mailer implements IEmSnd {
       Multipart mp = new MimeMultipart();
       mp.addBodyPart(mbpt);
       for (EmAtch attch : pMsg.getAtchs()) {
-        File fl = new File(attch.getPth());
-        if (!fl.exists()) {
-          //URI uploaded relative to WEB-APP path:
-          String fp = attch.getPth();
-          if (!"/".equals(File.separator)) {
-            fp = fp.replace("/", "\\");
-          }
-          fl = new File(this.appPth + File.separator + fp);
+        long astm = System.nanoTime();
+        MimeBodyPart mbp = null;
+        if (pAtchs != null) {
+          mbp = pAtchs.get(attch.getPth());
         }
-        if (fl.exists()) {
-          MimeBodyPart mbp = new MimeBodyPart();
-          mbp.attachFile(fl);
-          mp.addBodyPart(mbp);
-        } else {
-          throw new Exception("There is no file: " + attch.getPth());
+        if (mbp == null) {
+          DataSource ds = this.atchRsv.rsv(attch.getPth());
+          mbp = new MimeBodyPart();
+          mbp.setDataHandler(new DataHandler(ds));
+          mbp.setFileName(ds.getName());
+          if (pAtchs != null) {
+            pAtchs.put(attch.getPth(), mbp);
+          }
         }
+        mp.addBodyPart(mbp);
+        atchNs += System.nanoTime() - astm;
       }
       msg.setContent(mp);
     } else {
       msg.setText(pMsg.getTxt());
     }
     msg.setSentDate(new Date());
-    Transport.send(msg, pMsg.getEmCn().getEml(), pMsg.getEmCn().getPwd());
+    msg.saveChanges();
+    if (this.mlMtrcs != null) {
+      MlCnMtr mt = this.mlMtrcs.lazCn(pMsg.getEmCn().getEml());
+      if (pMsg.getAtchs().size() > 0) {
+        mt.phs(MlCnMtr.ATCH, atchNs);
+      }
+      mt.phs(MlCnMtr.BLD, System.nanoTime() - stm - atchNs);
+    }
+    return msg;
   }
 
   //Simple getters and setters:
@@ -172,6 +392,38 @@ public class Mailer implements IEmSnd {
     this.log = pLog;
   }
 
+  /**
+   * <p>Getter for trnsPl.</p>
+   * @return TrnsPl
+   **/
+  public final TrnsPl getTrnsPl() {
+    return this.trnsPl;
+  }
+
+  /**
+   * <p>Getter for mlMtrcs.</p>
+   * @return MlMtrcs
+   **/
+  public final MlMtrcs getMlMtrcs() {
+    return this.mlMtrcs;
+  }
+
+  /**
+   * <p>Setter for mlMtrcs.</p>
+   * @param pMlMtrcs reference
+   **/
+  public final void setMlMtrcs(final MlMtrcs pMlMtrcs) {
+    this.mlMtrcs = pMlMtrcs;
+  }
+
+  /**
+   * <p>Getter for atchRsv.</p>
+   * @return AtchRsv
+   **/
+  public final AtchRsv getAtchRsv() {
+    return this.atchRsv;
+  }
+
   /**
    * <p>Getter for appPth.</p>
    * @return String
@@ -186,5 +438,6 @@ public class Mailer implements IEmSnd {
    **/
   public final void setAppPth(final String pAppPth) {
     this.appPth = pAppPth;
+    this.atchRsv.setAppPth(pAppPth);
   }
 }
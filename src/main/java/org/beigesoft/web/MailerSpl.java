@@ -0,0 +1,699 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.web;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+
+import javax.mail.Address;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.internet.InternetAddress;
+
+import org.beigesoft.log.ILog;
+import org.beigesoft.mdlp.EmAdr;
+import org.beigesoft.mdlp.EmAtch;
+import org.beigesoft.mdlp.EmCon;
+import org.beigesoft.mdlp.EmInt;
+import org.beigesoft.mdlp.EmMsg;
+import org.beigesoft.mdlp.EmRcp;
+import org.beigesoft.mdlp.EmStr;
+import org.beigesoft.rdb.IOrm;
+import org.beigesoft.rdb.IRdb;
+import org.beigesoft.srv.IEmSnd;
+
+/**
+ * <p>Email sender that only writes message into spool directory and
+ * returns immediately, so request doesn't wait for SMTP. Spooled
+ * messages are delivered by given sender on background threads. Failed
+ * delivery is retried with exponential backoff, after "maxAtt" attempts
+ * message is moved into "dead" sub-directory. If message is rejected
+ * only for some recipients, then spool keeps only valid unsent ones,
+ * so recipients that already got it never get duplicate, and invalid
+ * ones are dropped. Spool is replayed
+ * on start, so messages survive restart. Spool files don't hold
+ * connection's password, it's resolved by connection ID on delivery
+ * from connections spooled in this run or from database.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class MailerSpl implements IEmSnd {
+
+  /**
+   * <p>Spool file extension.</p>
+   **/
+  public static final String SPLEXT = ".spl";
+
+  /**
+   * <p>Default threads count.</p>
+   **/
+  public static final int THRSDEF = 2;
+
+  /**
+   * <p>Default max delivery attempts.</p>
+   **/
+  public static final int MAXATTDEF = 10;
+
+  /**
+   * <p>Default first retry delay, milliseconds.</p>
+   **/
+  public static final long BSMSDEF = 30000L;
+
+  /**
+   * <p>Default max retry delay, milliseconds.</p>
+   **/
+  public static final long MAXMSDEF = 3600000L;
+
+  /**
+   * <p>Log.</p>
+   **/
+  private final ILog log;
+
+  /**
+   * <p>Real sender.</p>
+   **/
+  private final IEmSnd mlr;
+
+  /**
+   * <p>Spool directory.</p>
+   **/
+  private final File dir;
+
+  /**
+   * <p>Dead letters directory.</p>
+   **/
+  private final File dead;
+
+  /**
+   * <p>Spool files sequence.</p>
+   **/
+  private final AtomicLong seq = new AtomicLong();
+
+  /**
+   * <p>Threads count.</p>
+   **/
+  private volatile int thrs = THRSDEF;
+
+  /**
+   * <p>Max delivery attempts.</p>
+   **/
+  private volatile int maxAtt = MAXATTDEF;
+
+  /**
+   * <p>First retry delay, milliseconds.</p>
+   **/
+  private volatile long bsMs = BSMSDEF;
+
+  /**
+   * <p>Max retry delay, milliseconds.</p>
+   **/
+  private volatile long maxMs = MAXMSDEF;
+
+  /**
+   * <p>Executor, lazy created.</p>
+   **/
+  private ScheduledThreadPoolExecutor exr;
+
+  /**
+   * <p>Whether it's released, i.e. nothing is scheduled any more.</p>
+   **/
+  private volatile boolean isCls;
+
+  /**
+   * <p>Connections spooled in this run by ID, or by spool file name
+   * if there is no ID.</p>
+   **/
+  private final ConcurrentMap<String, EmCon> cns =
+    new ConcurrentHashMap<String, EmCon>();
+
+  /**
+   * <p>ORM to resolve connection after restart, maybe NULL.</p>
+   **/
+  private IOrm orm;
+
+  /**
+   * <p>Database of ORM.</p>
+   **/
+  private IRdb<?> rdb;
+
+  /**
+   * <p>Only constructor.</p>
+   * @param pLog log
+   * @param pMlr real sender
+   * @param pDir spool directory
+   * @throws Exception - if directory can't be created
+   **/
+  public MailerSpl(final ILog pLog, final IEmSnd pMlr,
+    final File pDir) throws Exception {
+    this.log = pLog;
+    this.mlr = pMlr;
+    this.dir = pDir;
+    this.dead = new File(pDir, "dead");
+    if (!this.dead.exists() && !this.dead.mkdirs()) {
+      throw new Exception("Can't create dir: " + this.dead);
+    }
+  }
+
+  /**
+   * <p>Spools email, it will be sent later.</p>
+   * @param pRvs request scoped vars
+   * @param pMsg msg to mail
+   * @throws Exception - an exception
+   **/
+  @Override
+  public final void send(final Map<String, Object> pRvs,
+    final EmMsg pMsg) throws Exception {
+    File fl = wrSpl(pMsg);
+    sched(fl, 0, 0L);
+  }
+
+  /**
+   * <p>Schedules all spooled messages, it's invoked on start.</p>
+   * @return spooled messages count
+   **/
+  public final int rply() {
+    File[] fls = this.dir.listFiles();
+    if (fls == null) {
+      return 0;
+    }
+    Arrays.sort(fls);
+    int rz = 0;
+    for (File fl : fls) {
+      if (fl.isFile() && fl.getName().endsWith(SPLEXT)) {
+        sched(fl, 0, 0L);
+        rz++;
+      }
+    }
+    if (rz > 0) {
+      this.log.info(null, getClass(), "Replayed spooled emails: " + rz);
+    }
+    return rz;
+  }
+
+  /**
+   * <p>Stops delivering, undelivered messages stay in spool.
+   * After that messages are only spooled.</p>
+   **/
+  public final synchronized void release() {
+    this.isCls = true;
+    if (this.exr != null) {
+      this.exr.shutdown();
+      this.exr = null;
+    }
+  }
+
+  /**
+   * <p>Schedules delivery.</p>
+   * @param pFl spool file
+   * @param pAtt previous attempts count
+   * @param pDly delay, milliseconds
+   **/
+  private void sched(final File pFl, final int pAtt, final long pDly) {
+    ScheduledThreadPoolExecutor ex = lazExr();
+    if (ex == null) {
+      return; //released, it stays in spool
+    }
+    try {
+      ex.schedule(new Runnable() {
+        @Override
+        public void run() {
+          dlvr(pFl, pAtt);
+        }
+      }, pDly, TimeUnit.MILLISECONDS);
+    } catch (RejectedExecutionException e) {
+      //released meanwhile, it stays in spool
+    }
+  }
+
+  /**
+   * <p>Delivers spooled message, reschedules it on failure or moves
+   * into dead letters if attempts are exhausted.</p>
+   * @param pFl spool file
+   * @param pAtt previous attempts count
+   **/
+  private void dlvr(final File pFl, final int pAtt) {
+    Map<String, Object> rvs = new HashMap<String, Object>();
+    try {
+      EmMsg msg = rdSpl(pFl);
+      this.mlr.send(rvs, msg);
+      if (!pFl.delete()) {
+        this.log.error(rvs, getClass(), "Can't delete sent " + pFl);
+      }
+      this.cns.remove(pFl.getName());
+    } catch (Exception e) {
+      int att = pAtt + 1;
+      SendFailedException sfe = sndFld(e);
+      if (sfe != null && (sfe.getValidSentAddresses() != null
+        && sfe.getValidSentAddresses().length > 0
+          || sfe.getInvalidAddresses() != null
+            && sfe.getInvalidAddresses().length > 0)) {
+        try {
+          if (!rwRcps(pFl, sfe.getValidUnsentAddresses())) {
+            if (!pFl.delete()) {
+              this.log.error(rvs, getClass(), "Can't delete sent " + pFl);
+            }
+            this.cns.remove(pFl.getName());
+            this.log.error(rvs, getClass(), "Email " + pFl.getName()
+              + " isn't delivered to invalid recipients", e);
+            return;
+          }
+        } catch (Exception e1) {
+          //it can't be retried without duplicates:
+          this.log.error(rvs, getClass(), "Can't rewrite recipients "
+            + pFl, e1);
+          toDead(rvs, pFl, att, e);
+          return;
+        }
+      }
+      if (att >= this.maxAtt) {
+        toDead(rvs, pFl, att, e);
+      } else {
+        long dly = this.bsMs;
+        for (int i = 0; i < pAtt && dly < this.maxMs; i++) {
+          dly *= 2;
+        }
+        dly = Math.min(dly, this.maxMs);
+        this.log.warn(rvs, getClass(), "Email " + pFl.getName()
+          + " is postponed by " + dly + "ms, attempt " + att + ": " + e);
+        sched(pFl, att, dly);
+      }
+    }
+  }
+
+  /**
+   * <p>Moves spool file into dead letters.</p>
+   * @param pRvs request scoped vars
+   * @param pFl spool file
+   * @param pAtt attempts count
+   * @param pExc last exception
+   **/
+  private void toDead(final Map<String, Object> pRvs, final File pFl,
+    final int pAtt, final Exception pExc) {
+    this.cns.remove(pFl.getName());
+    File dfl = new File(this.dead, pFl.getName());
+    if (!pFl.renameTo(dfl)) {
+      this.log.error(pRvs, getClass(), "Can't move to dead " + pFl);
+    }
+    this.log.error(pRvs, getClass(), "Email is moved to dead letters "
+      + dfl + " after attempts: " + pAtt, pExc);
+  }
+
+  /**
+   * <p>Finds send failed exception in exception's chain.</p>
+   * @param pExc exception
+   * @return send failed exception or NULL
+   **/
+  private SendFailedException sndFld(final Exception pExc) {
+    Throwable th = pExc;
+    while (th != null) {
+      if (th instanceof SendFailedException) {
+        return (SendFailedException) th;
+      }
+      if (th instanceof MessagingException
+        && ((MessagingException) th).getNextException() != null) {
+        th = ((MessagingException) th).getNextException();
+      } else {
+        th = th.getCause();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * <p>Rewrites spool file's recipients.</p>
+   * @param pFl spool file
+   * @param pRcps recipients, maybe NULL
+   * @return false if there is no recipient, spool file isn't changed
+   * @throws Exception - an exception
+   **/
+  private boolean rwRcps(final File pFl,
+    final Address[] pRcps) throws Exception {
+    if (pRcps == null || pRcps.length == 0) {
+      return false;
+    }
+    Properties prs = new Properties();
+    InputStream is = new FileInputStream(pFl);
+    try {
+      prs.load(is);
+    } finally {
+      is.close();
+    }
+    for (int i = 0; prs.getProperty("rcp." + i) != null; i++) {
+      prs.remove("rcp." + i);
+    }
+    for (int i = 0; i < pRcps.length; i++) {
+      if (pRcps[i] instanceof InternetAddress) {
+        putNn(prs, "rcp." + i, ((InternetAddress) pRcps[i]).getAddress());
+      } else {
+        putNn(prs, "rcp." + i, pRcps[i]);
+      }
+    }
+    File tmp = new File(this.dir, pFl.getName() + ".tmp");
+    store(prs, tmp);
+    if (!tmp.renameTo(pFl)) {
+      if (!tmp.delete()) {
+        tmp.deleteOnExit();
+      }
+      throw new Exception("Can't rename spool file " + tmp);
+    }
+    return true;
+  }
+
+  /**
+   * <p>Stores properties into file and syncs it.</p>
+   * @param pPrs properties
+   * @param pFl file
+   * @throws Exception - an exception
+   **/
+  private void store(final Properties pPrs, final File pFl) throws Exception {
+    FileOutputStream os = new FileOutputStream(pFl);
+    try {
+      pPrs.store(os, null);
+      os.getFD().sync();
+    } finally {
+      os.close();
+    }
+  }
+
+  /**
+   * <p>Writes message into new spool file.</p>
+   * @param pMsg message
+   * @return spool file
+   * @throws Exception - an exception
+   **/
+  private File wrSpl(final EmMsg pMsg) throws Exception {
+    Properties prs = new Properties();
+    EmCon cn = pMsg.getEmCn();
+    putNn(prs, "iid", pMsg.getIid());
+    putNn(prs, "subj", pMsg.getSubj());
+    putNn(prs, "txt", pMsg.getTxt());
+    putNn(prs, "cn.iid", cn.getIid());
+    putNn(prs, "cn.eml", cn.getEml());
+    for (int i = 0; i < cn.getStrPrps().size(); i++) {
+      putNn(prs, "cn.str." + i + ".nm", cn.getStrPrps().get(i).getPrNm());
+      putNn(prs, "cn.str." + i + ".vl", cn.getStrPrps().get(i).getPrVl());
+    }
+    for (int i = 0; i < cn.getIntPrps().size(); i++) {
+      putNn(prs, "cn.int." + i + ".nm", cn.getIntPrps().get(i).getPrNm());
+      putNn(prs, "cn.int." + i + ".vl", cn.getIntPrps().get(i).getPrVl());
+    }
+    for (int i = 0; i < pMsg.getRcps().size(); i++) {
+      putNn(prs, "rcp." + i, pMsg.getRcps().get(i).getEml().getIid());
+    }
+    for (int i = 0; i < pMsg.getAtchs().size(); i++) {
+      putNn(prs, "atch." + i, pMsg.getAtchs().get(i).getPth());
+    }
+    String nm = System.currentTimeMillis() + "-" + this.seq.incrementAndGet();
+    File tmp = new File(this.dir, nm + ".tmp");
+    store(prs, tmp);
+    File fl = new File(this.dir, nm + SPLEXT);
+    if (cn.getIid() != null) {
+      this.cns.put(cn.getIid().toString(), cn);
+    } else {
+      this.cns.put(fl.getName(), cn);
+    }
+    if (!tmp.renameTo(fl)) {
+      this.cns.remove(fl.getName());
+      throw new Exception("Can't rename spool file " + tmp);
+    }
+    return fl;
+  }
+
+  /**
+   * <p>Reads message from spool file.</p>
+   * @param pFl spool file
+   * @return message
+   * @throws Exception - an exception
+   **/
+  private EmMsg rdSpl(final File pFl) throws Exception {
+    Properties prs = new Properties();
+    InputStream is = new FileInputStream(pFl);
+    try {
+      prs.load(is);
+    } finally {
+      is.close();
+    }
+    EmCon cn = new EmCon();
+    if (prs.getProperty("cn.iid") != null) {
+      cn.setIid(Long.valueOf(prs.getProperty("cn.iid")));
+    }
+    cn.setEml(prs.getProperty("cn.eml"));
+    cn.setPwd(rsvPwd(prs.getProperty("cn.iid"), pFl));
+    List<EmStr> strs = new ArrayList<EmStr>();
+    for (int i = 0; prs.getProperty("cn.str." + i + ".nm") != null; i++) {
+      EmStr esp = new EmStr();
+      esp.setOwnr(cn);
+      esp.setPrNm(prs.getProperty("cn.str." + i + ".nm"));
+      esp.setPrVl(prs.getProperty("cn.str." + i + ".vl"));
+      strs.add(esp);
+    }
+    cn.setStrPrps(strs);
+    List<EmInt> ints = new ArrayList<EmInt>();
+    for (int i = 0; prs.getProperty("cn.int." + i + ".nm") != null; i++) {
+      EmInt eip = new EmInt();
+      eip.setOwnr(cn);
+      eip.setPrNm(prs.getProperty("cn.int." + i + ".nm"));
+      String vl = prs.getProperty("cn.int." + i + ".vl");
+      if (vl != null) {
+        eip.setPrVl(Integer.valueOf(vl));
+      }
+      ints.add(eip);
+    }
+    cn.setIntPrps(ints);
+    EmMsg msg = new EmMsg();
+    if (prs.getProperty("iid") != null) {
+      msg.setIid(Long.valueOf(prs.getProperty("iid")));
+    }
+    msg.setEmCn(cn);
+    msg.setSubj(prs.getProperty("subj"));
+    msg.setTxt(prs.getProperty("txt"));
+    List<EmRcp> rcps = new ArrayList<EmRcp>();
+    for (int i = 0; prs.getProperty("rcp." + i) != null; i++) {
+      EmAdr adr = new EmAdr();
+      adr.setIid(prs.getProperty("rcp." + i));
+      EmRcp rcp = new EmRcp();
+      rcp.setOwnr(msg);
+      rcp.setEml(adr);
+      rcps.add(rcp);
+    }
+    msg.setRcps(rcps);
+    List<EmAtch> atchs = new ArrayList<EmAtch>();
+    for (int i = 0; prs.getProperty("atch." + i) != null; i++) {
+      EmAtch atch = new EmAtch();
+      atch.setOwnr(msg);
+      atch.setPth(prs.getProperty("atch." + i));
+      atchs.add(atch);
+    }
+    msg.setAtchs(atchs);
+    return msg;
+  }
+
+  /**
+   * <p>Resolves connection's password by ID from connections spooled
+   * in this run, otherwise from database.</p>
+   * @param pCnId connection ID or NULL
+   * @param pFl spool file
+   * @return password
+   * @throws Exception - if connection is unknown
+   **/
+  private String rsvPwd(final String pCnId, final File pFl) throws Exception {
+    EmCon cn;
+    if (pCnId != null) {
+      cn = this.cns.get(pCnId);
+    } else {
+      cn = this.cns.get(pFl.getName());
+    }
+    if (cn == null && pCnId != null && this.orm != null) {
+      Map<String, Object> rvs = new HashMap<String, Object>();
+      Map<String, Object> vs = new HashMap<String, Object>();
+      EmCon ec = new EmCon();
+      ec.setIid(Long.valueOf(pCnId));
+      try {
+        this.rdb.setAcmt(false);
+        this.rdb.setTrIsl(IRdb.TRRUC);
+        this.rdb.begin();
+        cn = this.orm.retEnt(rvs, vs, ec);
+        this.rdb.commit();
+      } catch (Exception e) {
+        if (!this.rdb.getAcmt()) {
+          this.rdb.rollBack();
+        }
+        throw e;
+      } finally {
+        this.rdb.release();
+      }
+      if (cn != null) {
+        this.cns.put(pCnId, cn);
+      }
+    }
+    if (cn == null) {
+      throw new Exception("Unknown email connection " + pCnId
+        + " for " + pFl.getName());
+    }
+    return cn.getPwd();
+  }
+
+  /**
+   * <p>Puts not null value as string.</p>
+   * @param pPrs properties
+   * @param pNm name
+   * @param pVl value
+   **/
+  private void putNn(final Properties pPrs, final String pNm,
+    final Object pVl) {
+    if (pVl != null) {
+      pPrs.setProperty(pNm, pVl.toString());
+    }
+  }
+
+  /**
+   * <p>Lazy gets executor, it's never recreated after release.</p>
+   * @return executor or NULL if it's released
+   **/
+  private synchronized ScheduledThreadPoolExecutor lazExr() {
+    if (this.isCls) {
+      return null;
+    }
+    if (this.exr == null) {
+      final AtomicInteger thrNum = new AtomicInteger();
+      ThreadFactory tf = new ThreadFactory() {
+        @Override
+        public Thread newThread(final Runnable pRn) {
+          Thread th = new Thread(pRn, "mailspl-" + thrNum.incrementAndGet());
+          th.setDaemon(true);
+          return th;
+        }
+      };
+      this.exr = new ScheduledThreadPoolExecutor(this.thrs, tf);
+      this.exr.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+    }
+    return this.exr;
+  }
+
+  //Simple getters and setters:
+  /**
+   * <p>Setter for orm and its database.</p>
+   * @param <RS> platform dependent record set type
+   * @param pOrm ORM
+   * @param pRdb database
+   **/
+  public final synchronized <RS> void setOrm(final IOrm pOrm,
+    final IRdb<RS> pRdb) {
+    this.orm = pOrm;
+    this.rdb = pRdb;
+  }
+
+  /**
+   * <p>Getter for dir.</p>
+   * @return File
+   **/
+  public final File getDir() {
+    return this.dir;
+  }
+
+  /**
+   * <p>Getter for thrs.</p>
+   * @return int
+   **/
+  public final int getThrs() {
+    return this.thrs;
+  }
+
+  /**
+   * <p>Setter for thrs.</p>
+   * @param pThrs reference
+   **/
+  public final void setThrs(final int pThrs) {
+    this.thrs = pThrs;
+  }
+
+  /**
+   * <p>Getter for maxAtt.</p>
+   * @return int
+   **/
+  public final int getMaxAtt() {
+    return this.maxAtt;
+  }
+
+  /**
+   * <p>Setter for maxAtt.</p>
+   * @param pMaxAtt reference
+   **/
+  public final void setMaxAtt(final int pMaxAtt) {
+    this.maxAtt = pMaxAtt;
+  }
+
+  /**
+   * <p>Getter for bsMs.</p>
+   * @return long
+   **/
+  public final long getBsMs() {
+    return this.bsMs;
+  }
+
+  /**
+   * <p>Setter for bsMs.</p>
+   * @param pBsMs reference
+   **/
+  public final void setBsMs(final long pBsMs) {
+    this.bsMs = pBsMs;
+  }
+
+  /**
+   * <p>Getter for maxMs.</p>
+   * @return long
+   **/
+  public final long getMaxMs() {
+    return this.maxMs;
+  }
+
+  /**
+   * <p>Setter for maxMs.</p>
+   * @param pMaxMs reference
+   **/
+  public final void setMaxMs(final long pMaxMs) {
+    this.maxMs = pMaxMs;
+  }
+}
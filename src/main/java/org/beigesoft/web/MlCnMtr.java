@@ -0,0 +1,199 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.web;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * <p>Email connection's delivery metrics: time and count
+ * of every phase, sent messages and bytes, failures by exception
+ * class.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class MlCnMtr {
+
+  /**
+   * <p>Phase MIME building (without attachments).</p>
+   **/
+  public static final int BLD = 0;
+
+  /**
+   * <p>Phase attachments resolving and reading.</p>
+   **/
+  public static final int ATCH = 1;
+
+  /**
+   * <p>Phase getting connected transport (connect, TLS, auth
+   * or pooled one).</p>
+   **/
+  public static final int CON = 2;
+
+  /**
+   * <p>Phase sending, i.e. SMTP envelope and DATA.</p>
+   **/
+  public static final int DAT = 3;
+
+  /**
+   * <p>Phases names.</p>
+   **/
+  public static final String[] PHSNMS = {"build", "attach", "connect",
+    "data"};
+
+  /**
+   * <p>Connection's email.</p>
+   **/
+  private final String eml;
+
+  /**
+   * <p>Phases nanoseconds.</p>
+   **/
+  private final StrCnt[] phNs = new StrCnt[PHSNMS.length];
+
+  /**
+   * <p>Phases counts.</p>
+   **/
+  private final StrCnt[] phCnt = new StrCnt[PHSNMS.length];
+
+  /**
+   * <p>Sent messages.</p>
+   **/
+  private final StrCnt msgs = new StrCnt();
+
+  /**
+   * <p>Sent bytes (text and attachments).</p>
+   **/
+  private final StrCnt bts = new StrCnt();
+
+  /**
+   * <p>Failures by exception class.</p>
+   **/
+  private final ConcurrentMap<String, StrCnt> fls =
+    new ConcurrentHashMap<String, StrCnt>();
+
+  /**
+   * <p>Only constructor.</p>
+   * @param pEml connection's email
+   **/
+  public MlCnMtr(final String pEml) {
+    this.eml = pEml;
+    for (int i = 0; i < PHSNMS.length; i++) {
+      this.phNs[i] = new StrCnt();
+      this.phCnt[i] = new StrCnt();
+    }
+  }
+
+  /**
+   * <p>Adds phase time.</p>
+   * @param pPh phase, e.g. BLD
+   * @param pNs nanoseconds
+   **/
+  public final void phs(final int pPh, final long pNs) {
+    this.phNs[pPh].add(pNs);
+    this.phCnt[pPh].inc();
+  }
+
+  /**
+   * <p>Counts sent message.</p>
+   * @param pBts message bytes
+   **/
+  public final void sent(final long pBts) {
+    this.msgs.inc();
+    this.bts.add(pBts);
+  }
+
+  /**
+   * <p>Counts failure.</p>
+   * @param pExc exception
+   **/
+  public final void fail(final Exception pExc) {
+    String cls = pExc.getClass().getName();
+    StrCnt cnt = this.fls.get(cls);
+    if (cnt == null) {
+      cnt = new StrCnt();
+      StrCnt ex = this.fls.putIfAbsent(cls, cnt);
+      if (ex != null) {
+        cnt = ex;
+      }
+    }
+    cnt.inc();
+  }
+
+  /**
+   * <p>Gets phase total time.</p>
+   * @param pPh phase, e.g. BLD
+   * @return nanoseconds
+   **/
+  public final long phsNs(final int pPh) {
+    return this.phNs[pPh].sum();
+  }
+
+  /**
+   * <p>Gets phase count.</p>
+   * @param pPh phase, e.g. BLD
+   * @return count
+   **/
+  public final long phsCnt(final int pPh) {
+    return this.phCnt[pPh].sum();
+  }
+
+  //Simple getters:
+  /**
+   * <p>Getter for eml.</p>
+   * @return String
+   **/
+  public final String getEml() {
+    return this.eml;
+  }
+
+  /**
+   * <p>Getter for msgs.</p>
+   * @return StrCnt
+   **/
+  public final StrCnt getMsgs() {
+    return this.msgs;
+  }
+
+  /**
+   * <p>Getter for bts.</p>
+   * @return StrCnt
+   **/
+  public final StrCnt getBts() {
+    return this.bts;
+  }
+
+  /**
+   * <p>Getter for fls.</p>
+   * @return failures by exception class
+   **/
+  public final ConcurrentMap<String, StrCnt> getFls() {
+    return this.fls;
+  }
+}
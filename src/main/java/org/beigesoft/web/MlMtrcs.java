@@ -0,0 +1,124 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.web;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.io.PrintWriter;
+
+/**
+ * <p>Mail delivery metrics registry by connection's email.
+ * It's created by FctMail as bean "MlMtrcs", Mailer records into it.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class MlMtrcs {
+
+  /**
+   * <p>Nanoseconds in second.</p>
+   **/
+  private static final double NSINSEC = 1.0e9;
+
+  /**
+   * <p>Metrics by connection's email.</p>
+   **/
+  private final ConcurrentMap<String, MlCnMtr> cns =
+    new ConcurrentHashMap<String, MlCnMtr>();
+
+  /**
+   * <p>Lazy gets connection's metrics.</p>
+   * @param pEml connection's email
+   * @return metrics
+   **/
+  public final MlCnMtr lazCn(final String pEml) {
+    MlCnMtr rz = this.cns.get(pEml);
+    if (rz == null) {
+      rz = new MlCnMtr(pEml);
+      MlCnMtr ex = this.cns.putIfAbsent(pEml, rz);
+      if (ex != null) {
+        rz = ex;
+      }
+    }
+    return rz;
+  }
+
+  /**
+   * <p>Writes all metrics in Prometheus text format.</p>
+   * @param pWri writer
+   **/
+  public final void write(final PrintWriter pWri) {
+    Mtrcs.ln(pWri,
+      "# HELP beige_mail_phase_seconds Mail delivery phases time.");
+    Mtrcs.ln(pWri, "# TYPE beige_mail_phase_seconds summary");
+    for (MlCnMtr cm : this.cns.values()) {
+      for (int i = 0; i < MlCnMtr.PHSNMS.length; i++) {
+        String lbs = "{eml=\"" + Mtrcs.esc(cm.getEml()) + "\",phase=\""
+          + MlCnMtr.PHSNMS[i] + "\"} ";
+        Mtrcs.ln(pWri, "beige_mail_phase_seconds_sum" + lbs
+          + cm.phsNs(i) / NSINSEC);
+        Mtrcs.ln(pWri, "beige_mail_phase_seconds_count" + lbs
+          + cm.phsCnt(i));
+      }
+    }
+    Mtrcs.ln(pWri, "# HELP beige_mail_messages_total Sent emails.");
+    Mtrcs.ln(pWri, "# TYPE beige_mail_messages_total counter");
+    for (MlCnMtr cm : this.cns.values()) {
+      Mtrcs.ln(pWri, "beige_mail_messages_total{eml=\""
+        + Mtrcs.esc(cm.getEml()) + "\"} " + cm.getMsgs().sum());
+    }
+    Mtrcs.ln(pWri,
+      "# HELP beige_mail_bytes_total Sent emails content bytes.");
+    Mtrcs.ln(pWri, "# TYPE beige_mail_bytes_total counter");
+    for (MlCnMtr cm : this.cns.values()) {
+      Mtrcs.ln(pWri, "beige_mail_bytes_total{eml=\""
+        + Mtrcs.esc(cm.getEml()) + "\"} " + cm.getBts().sum());
+    }
+    Mtrcs.ln(pWri,
+      "# HELP beige_mail_failures_total Failed emails by error.");
+    Mtrcs.ln(pWri, "# TYPE beige_mail_failures_total counter");
+    for (MlCnMtr cm : this.cns.values()) {
+      for (Map.Entry<String, StrCnt> ent : cm.getFls().entrySet()) {
+        Mtrcs.ln(pWri, "beige_mail_failures_total{eml=\""
+          + Mtrcs.esc(cm.getEml()) + "\",exception=\""
+            + Mtrcs.esc(ent.getKey()) + "\"} " + ent.getValue().sum());
+      }
+    }
+  }
+
+
+  //Simple getters:
+  /**
+   * <p>Getter for cns.</p>
+   * @return metrics by connection's email
+   **/
+  public final ConcurrentMap<String, MlCnMtr> getCns() {
+    return this.cns;
+  }
+}
@@ -0,0 +1,222 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.web;
+
+import java.util.Map;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.io.PrintWriter;
+
+import org.beigesoft.exc.ExcCode;
+
+/**
+ * <p>Front servlets metrics registry: handlers latency histograms,
+ * errors counts per ExcCode code, redirects and rejected by limits
+ * requests counts per servlet.
+ * Servlets resolve their histograms and counters on init,
+ * so request hot path only increments them.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class Mtrcs {
+
+  /**
+   * <p>Servlet context attribute name.</p>
+   **/
+  public static final String CTXATTR = "mtrcs";
+
+  /**
+   * <p>Nanoseconds in second.</p>
+   **/
+  private static final double NSINSEC = 1.0e9;
+
+  /**
+   * <p>Reported quantiles.</p>
+   **/
+  private static final double[] QNTS = {0.5, 0.95, 0.99};
+
+  /**
+   * <p>Histograms by servlet/handler name.</p>
+   **/
+  private final ConcurrentMap<String, Hstg> hstgs =
+    new ConcurrentHashMap<String, Hstg>();
+
+  /**
+   * <p>Errors counts by code.</p>
+   **/
+  private final ConcurrentMap<Integer, AtomicLong> errs =
+    new ConcurrentHashMap<Integer, AtomicLong>();
+
+  /**
+   * <p>Redirects counts by servlet name.</p>
+   **/
+  private final ConcurrentMap<String, AtomicLong> rdrs =
+    new ConcurrentHashMap<String, AtomicLong>();
+
+  /**
+   * <p>Rejected by limits requests counts by servlet name.</p>
+   **/
+  private final ConcurrentMap<String, AtomicLong> rjcs =
+    new ConcurrentHashMap<String, AtomicLong>();
+
+  /**
+   * <p>Lazy gets handler's histogram.</p>
+   * @param pSrvNm servlet name
+   * @param pHndNm handler name
+   * @return histogram
+   **/
+  public final Hstg lazHstg(final String pSrvNm, final String pHndNm) {
+    String key = pSrvNm + "/" + pHndNm;
+    Hstg rz = this.hstgs.get(key);
+    if (rz == null) {
+      rz = new Hstg(pSrvNm, pHndNm);
+      Hstg ex = this.hstgs.putIfAbsent(key, rz);
+      if (ex != null) {
+        rz = ex;
+      }
+    }
+    return rz;
+  }
+
+  /**
+   * <p>Lazy gets servlet's redirects counter.</p>
+   * @param pSrvNm servlet name
+   * @return counter
+   **/
+  public final AtomicLong lazRdr(final String pSrvNm) {
+    return lazCnt(this.rdrs, pSrvNm);
+  }
+
+  /**
+   * <p>Lazy gets servlet's rejected by limits requests counter.</p>
+   * @param pSrvNm servlet name
+   * @return counter
+   **/
+  public final AtomicLong lazRjc(final String pSrvNm) {
+    return lazCnt(this.rjcs, pSrvNm);
+  }
+
+  /**
+   * <p>Counts error.</p>
+   * @param pExc exception
+   **/
+  public final void err(final Exception pExc) {
+    int cd;
+    if (pExc instanceof ExcCode) {
+      cd = ((ExcCode) pExc).getCode();
+    } else {
+      cd = ExcCode.WR;
+    }
+    lazCnt(this.errs, cd).incrementAndGet();
+  }
+
+  /**
+   * <p>Writes all metrics in Prometheus text format.</p>
+   * @param pWri writer
+   **/
+  public final void write(final PrintWriter pWri) {
+    List<Hstg> hsl = new ArrayList<Hstg>(this.hstgs.values());
+    ln(pWri, "# HELP beige_handler_seconds Request handler latency.");
+    ln(pWri, "# TYPE beige_handler_seconds summary");
+    for (Hstg hs : hsl) {
+      long[] snap = hs.snap();
+      String lbs = "servlet=\"" + esc(hs.getSrvNm()) + "\",handler=\""
+        + esc(hs.getHndNm()) + "\"";
+      for (double qn : QNTS) {
+        ln(pWri, "beige_handler_seconds{" + lbs + ",quantile=\"" + qn
+          + "\"} " + Hstg.qnt(snap, qn) / NSINSEC);
+      }
+      ln(pWri, "beige_handler_seconds_sum{" + lbs + "} "
+        + hs.getSum() / NSINSEC);
+      ln(pWri, "beige_handler_seconds_count{" + lbs + "} "
+        + Hstg.cnt(snap));
+    }
+    ln(pWri, "# HELP beige_errors_total Request errors by code.");
+    ln(pWri, "# TYPE beige_errors_total counter");
+    for (Map.Entry<Integer, AtomicLong> ent : this.errs.entrySet()) {
+      ln(pWri, "beige_errors_total{code=\"" + ent.getKey() + "\"} "
+        + ent.getValue().get());
+    }
+    ln(pWri, "# HELP beige_redirects_total Handlers redirects.");
+    ln(pWri, "# TYPE beige_redirects_total counter");
+    for (Map.Entry<String, AtomicLong> ent : this.rdrs.entrySet()) {
+      ln(pWri, "beige_redirects_total{servlet=\"" + esc(ent.getKey())
+        + "\"} " + ent.getValue().get());
+    }
+    ln(pWri, "# HELP beige_rejects_total Requests rejected by limits.");
+    ln(pWri, "# TYPE beige_rejects_total counter");
+    for (Map.Entry<String, AtomicLong> ent : this.rjcs.entrySet()) {
+      ln(pWri, "beige_rejects_total{servlet=\"" + esc(ent.getKey())
+        + "\"} " + ent.getValue().get());
+    }
+  }
+
+  /**
+   * <p>Writes line with Unix line separator.</p>
+   * @param pWri writer
+   * @param pLn line
+   **/
+  static void ln(final PrintWriter pWri, final String pLn) {
+    pWri.write(pLn);
+    pWri.write('\n');
+  }
+
+  /**
+   * <p>Lazy gets counter from given map.</p>
+   * @param <K> key type
+   * @param pCnts counters
+   * @param pKey key
+   * @return counter
+   **/
+  protected final <K> AtomicLong lazCnt(
+    final ConcurrentMap<K, AtomicLong> pCnts, final K pKey) {
+    AtomicLong rz = pCnts.get(pKey);
+    if (rz == null) {
+      rz = new AtomicLong();
+      AtomicLong ex = pCnts.putIfAbsent(pKey, rz);
+      if (ex != null) {
+        rz = ex;
+      }
+    }
+    return rz;
+  }
+
+  /**
+   * <p>Escapes label value.</p>
+   * @param pVl value
+   * @return escaped value
+   **/
+  static String esc(final String pVl) {
+    return pVl.replace("\\", "\\\\").replace("\"", "\\\"")
+      .replace("\n", "\\n");
+  }
+}
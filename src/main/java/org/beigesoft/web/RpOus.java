@@ -0,0 +1,254 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.web;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * <p>Managed report output stream. It buffers data in bounded buffer,
+ * flushes it to client on buffer full and flushes client's stream
+ * periodically (by bytes and time), so first bytes reach client quickly
+ * and huge report isn't held in memory. When client disconnects, any
+ * next write throws IOException, so report generator stops early.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class RpOus extends OutputStream {
+
+  /**
+   * <p>Default buffer size.</p>
+   **/
+  public static final int BUFSZDEF = 8192;
+
+  /**
+   * <p>Default flush period in bytes.</p>
+   **/
+  public static final int FLSSZDEF = 65536;
+
+  /**
+   * <p>Default flush period in milliseconds.</p>
+   **/
+  public static final long FLSMSDEF = 1000L;
+
+  /**
+   * <p>Client's stream.</p>
+   **/
+  private final OutputStream ous;
+
+  /**
+   * <p>Buffer.</p>
+   **/
+  private final byte[] buf;
+
+  /**
+   * <p>Flush period in bytes.</p>
+   **/
+  private final long flsSz;
+
+  /**
+   * <p>Flush period in milliseconds.</p>
+   **/
+  private final long flsMs;
+
+  /**
+   * <p>Buffered bytes count.</p>
+   **/
+  private int cnt;
+
+  /**
+   * <p>Bytes written to client since last flush.</p>
+   **/
+  private long unfls;
+
+  /**
+   * <p>Last flush time.</p>
+   **/
+  private long flsTm;
+
+  /**
+   * <p>Total bytes written to client.</p>
+   **/
+  private long tot;
+
+  /**
+   * <p>Whether client has disconnected.</p>
+   **/
+  private boolean isAbrt;
+
+  /**
+   * <p>Whether it's closed.</p>
+   **/
+  private boolean isCls;
+
+  /**
+   * <p>Only constructor.</p>
+   * @param pOus client's stream
+   * @param pBufSz buffer size
+   * @param pFlsSz flush period in bytes
+   * @param pFlsMs flush period in milliseconds
+   **/
+  public RpOus(final OutputStream pOus, final int pBufSz,
+    final long pFlsSz, final long pFlsMs) {
+    this.ous = pOus;
+    this.buf = new byte[pBufSz];
+    this.flsSz = pFlsSz;
+    this.flsMs = pFlsMs;
+    this.flsTm = System.currentTimeMillis();
+  }
+
+  @Override
+  public final void write(final int pByte) throws IOException {
+    chkOpn();
+    if (this.cnt == this.buf.length) {
+      wrBuf();
+    }
+    this.buf[this.cnt++] = (byte) pByte;
+  }
+
+  @Override
+  public final void write(final byte[] pBts, final int pOfs,
+    final int pLen) throws IOException {
+    chkOpn();
+    if (pLen >= this.buf.length) {
+      wrBuf();
+      wrOus(pBts, pOfs, pLen);
+      return;
+    }
+    if (pLen > this.buf.length - this.cnt) {
+      wrBuf();
+    }
+    System.arraycopy(pBts, pOfs, this.buf, this.cnt, pLen);
+    this.cnt += pLen;
+  }
+
+  @Override
+  public final void flush() throws IOException {
+    chkOpn();
+    wrBuf();
+    flsOus();
+  }
+
+  @Override
+  public final void close() throws IOException {
+    if (this.isCls) {
+      return;
+    }
+    this.isCls = true;
+    if (this.isAbrt) {
+      return;
+    }
+    try {
+      wrBuf();
+    } finally {
+      this.ous.close();
+    }
+  }
+
+  /**
+   * <p>Checks whether stream is open and client is connected.</p>
+   * @throws IOException if not
+   **/
+  private void chkOpn() throws IOException {
+    if (this.isAbrt) {
+      throw new IOException("Client has disconnected!");
+    }
+    if (this.isCls) {
+      throw new IOException("Stream closed!");
+    }
+  }
+
+  /**
+   * <p>Writes buffer to client.</p>
+   * @throws IOException IOException
+   **/
+  private void wrBuf() throws IOException {
+    if (this.cnt > 0) {
+      int len = this.cnt;
+      this.cnt = 0;
+      wrOus(this.buf, 0, len);
+    }
+  }
+
+  /**
+   * <p>Writes bytes to client, flushes it periodically.</p>
+   * @param pBts bytes
+   * @param pOfs offset
+   * @param pLen length
+   * @throws IOException IOException
+   **/
+  private void wrOus(final byte[] pBts, final int pOfs,
+    final int pLen) throws IOException {
+    try {
+      this.ous.write(pBts, pOfs, pLen);
+    } catch (IOException e) {
+      this.isAbrt = true;
+      throw e;
+    }
+    this.unfls += pLen;
+    //the first portion is flushed immediately:
+    if (this.tot == 0L || this.unfls >= this.flsSz
+      || System.currentTimeMillis() - this.flsTm >= this.flsMs) {
+      flsOus();
+    }
+    this.tot += pLen;
+  }
+
+  /**
+   * <p>Flushes client's stream.</p>
+   * @throws IOException IOException
+   **/
+  private void flsOus() throws IOException {
+    try {
+      this.ous.flush();
+    } catch (IOException e) {
+      this.isAbrt = true;
+      throw e;
+    }
+    this.unfls = 0L;
+    this.flsTm = System.currentTimeMillis();
+  }
+
+  //Simple getters:
+  /**
+   * <p>Getter for isAbrt.</p>
+   * @return whether client has disconnected
+   **/
+  public final boolean getIsAbrt() {
+    return this.isAbrt;
+  }
+
+  /**
+   * <p>Getter for tot.</p>
+   * @return total bytes written to client
+   **/
+  public final long getTot() {
+    return this.tot;
+  }
+}
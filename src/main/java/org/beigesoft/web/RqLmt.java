@@ -0,0 +1,193 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.web;
+
+import java.util.Locale;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * <p>Request limits that are checked before handlers, so large or
+ * malicious form post is rejected cheaply. It's configured by servlet
+ * init parameters "maxBdSz" - max body size in bytes (by declared
+ * Content-Length, so body isn't read, body of unknown length,
+ * i.e. chunked one, is rejected), "maxPrmCnt" - max parameters
+ * values count, "maxPrmLen" - max parameter name or value length.
+ * Query string parameters are counted before parsing. Form body
+ * parameters are checked after container has parsed them, so parsing
+ * itself is bounded only by "maxBdSz", without it container's limits
+ * must be set (e.g. Tomcat's connector "maxPostSize" and
+ * "maxParameterCount"). Multipart body isn't parsed,
+ * upload servlets limit it themselves.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class RqLmt {
+
+  /**
+   * <p>Max body size, 0 means no limit.</p>
+   **/
+  private final long maxBdSz;
+
+  /**
+   * <p>Max parameters values count, 0 means no limit.</p>
+   **/
+  private final int maxPrmCnt;
+
+  /**
+   * <p>Max parameter name or value length, 0 means no limit.</p>
+   **/
+  private final int maxPrmLen;
+
+  /**
+   * <p>Only constructor.</p>
+   * @param pMaxBdSz max body size, 0 means no limit
+   * @param pMaxPrmCnt max parameters values count, 0 means no limit
+   * @param pMaxPrmLen max parameter name or value length,
+   * 0 means no limit
+   **/
+  public RqLmt(final long pMaxBdSz, final int pMaxPrmCnt,
+    final int pMaxPrmLen) {
+    this.maxBdSz = pMaxBdSz;
+    this.maxPrmCnt = pMaxPrmCnt;
+    this.maxPrmLen = pMaxPrmLen;
+  }
+
+  /**
+   * <p>Makes limits by servlet init parameters.</p>
+   * @param pMaxBdSz "maxBdSz" parameter
+   * @param pMaxPrmCnt "maxPrmCnt" parameter
+   * @param pMaxPrmLen "maxPrmLen" parameter
+   * @return limits or NULL if they aren't configured
+   **/
+  public static RqLmt make(final String pMaxBdSz, final String pMaxPrmCnt,
+    final String pMaxPrmLen) {
+    if (pMaxBdSz == null && pMaxPrmCnt == null && pMaxPrmLen == null) {
+      return null;
+    }
+    long mbs = 0L;
+    if (pMaxBdSz != null) {
+      mbs = Long.parseLong(pMaxBdSz);
+    }
+    int mpc = 0;
+    if (pMaxPrmCnt != null) {
+      mpc = Integer.parseInt(pMaxPrmCnt);
+    }
+    int mpl = 0;
+    if (pMaxPrmLen != null) {
+      mpl = Integer.parseInt(pMaxPrmLen);
+    }
+    return new RqLmt(mbs, mpc, mpl);
+  }
+
+  /**
+   * <p>Checks request. Request character encoding must be already set,
+   * since it may parse parameters.</p>
+   * @param pReq request
+   * @return 0 if it's OK, otherwise HTTP status to reject with,
+   * i.e. 413 if body is too big, 411 if body's size is unknown,
+   * 400 if there are too many or too long parameters
+   **/
+  public final int chk(final HttpServletRequest pReq) {
+    if (this.maxBdSz > 0L) {
+      long len = pReq.getContentLengthLong();
+      if (len > this.maxBdSz) {
+        return HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE;
+      }
+      if (len < 0L && pReq.getHeader("Transfer-Encoding") != null) {
+        return HttpServletResponse.SC_LENGTH_REQUIRED;
+      }
+    }
+    if (this.maxPrmCnt > 0) {
+      String qs = pReq.getQueryString();
+      if (qs != null) {
+        int cnt = 1;
+        for (int i = 0; i < qs.length(); i++) {
+          if (qs.charAt(i) == '&' && ++cnt > this.maxPrmCnt) {
+            return HttpServletResponse.SC_BAD_REQUEST;
+          }
+        }
+      }
+    }
+    if (this.maxPrmCnt == 0 && this.maxPrmLen == 0) {
+      return 0;
+    }
+    String cntTy = pReq.getContentType();
+    if (cntTy != null && cntTy.toLowerCase(Locale.ENGLISH)
+      .startsWith("multipart/")) {
+      return 0;
+    }
+    int cnt = 0;
+    for (Map.Entry<String, String[]> ent
+      : pReq.getParameterMap().entrySet()) {
+      cnt += ent.getValue().length;
+      if (this.maxPrmCnt > 0 && cnt > this.maxPrmCnt) {
+        return HttpServletResponse.SC_BAD_REQUEST;
+      }
+      if (this.maxPrmLen > 0) {
+        if (ent.getKey().length() > this.maxPrmLen) {
+          return HttpServletResponse.SC_BAD_REQUEST;
+        }
+        for (String vl : ent.getValue()) {
+          if (vl != null && vl.length() > this.maxPrmLen) {
+            return HttpServletResponse.SC_BAD_REQUEST;
+          }
+        }
+      }
+    }
+    return 0;
+  }
+
+  //Simple getters:
+  /**
+   * <p>Getter for maxBdSz.</p>
+   * @return long
+   **/
+  public final long getMaxBdSz() {
+    return this.maxBdSz;
+  }
+
+  /**
+   * <p>Getter for maxPrmCnt.</p>
+   * @return int
+   **/
+  public final int getMaxPrmCnt() {
+    return this.maxPrmCnt;
+  }
+
+  /**
+   * <p>Getter for maxPrmLen.</p>
+   * @return int
+   **/
+  public final int getMaxPrmLen() {
+    return this.maxPrmLen;
+  }
+}
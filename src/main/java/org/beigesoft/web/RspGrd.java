@@ -0,0 +1,403 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.web;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.Locale;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * <p>Response guard that is passed to asynchronous worker. Every output
+ * or change of response goes under this guard's monitor, and after
+ * closing (i.e. container has timed out or failed request) it does
+ * nothing, so worker never touches completed (recycled) response and
+ * never writes concurrently with listener that sends error.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class RspGrd extends HttpServletResponseWrapper {
+
+  /**
+   * <p>Whether it's closed, guarded by this.</p>
+   **/
+  private boolean isCls;
+
+  /**
+   * <p>Guarded stream, lazy created.</p>
+   **/
+  private GrdOus ous;
+
+  /**
+   * <p>Guarded writer, lazy created.</p>
+   **/
+  private PrintWriter wri;
+
+  /**
+   * <p>Only constructor.</p>
+   * @param pResp response
+   **/
+  public RspGrd(final HttpServletResponse pResp) {
+    super(pResp);
+  }
+
+  /**
+   * <p>Closes guard, it waits for current worker's output.</p>
+   * @return true if it was opened
+   **/
+  public final synchronized boolean cls() {
+    if (this.isCls) {
+      return false;
+    }
+    this.isCls = true;
+    return true;
+  }
+
+  /**
+   * <p>Checks if it's closed.</p>
+   * @return if closed
+   **/
+  public final synchronized boolean getIsCls() {
+    return this.isCls;
+  }
+
+  @Override
+  public final synchronized ServletOutputStream getOutputStream()
+    throws IOException {
+    if (this.ous == null) {
+      this.ous = new GrdOus(this, getResponse().getOutputStream());
+    }
+    return this.ous;
+  }
+
+  @Override
+  public final synchronized PrintWriter getWriter() throws IOException {
+    if (this.wri == null) {
+      this.wri = new PrintWriter(new GrdWri(this,
+        getResponse().getWriter()));
+    }
+    return this.wri;
+  }
+
+  @Override
+  public final synchronized void sendError(final int pSc,
+    final String pMsg) throws IOException {
+    if (!this.isCls) {
+      super.sendError(pSc, pMsg);
+    }
+  }
+
+  @Override
+  public final synchronized void sendError(
+    final int pSc) throws IOException {
+    if (!this.isCls) {
+      super.sendError(pSc);
+    }
+  }
+
+  @Override
+  public final synchronized void sendRedirect(
+    final String pLoc) throws IOException {
+    if (!this.isCls) {
+      super.sendRedirect(pLoc);
+    }
+  }
+
+  @Override
+  public final synchronized void flushBuffer() throws IOException {
+    if (!this.isCls) {
+      super.flushBuffer();
+    }
+  }
+
+  @Override
+  public final synchronized void reset() {
+    if (!this.isCls) {
+      super.reset();
+    }
+  }
+
+  @Override
+  public final synchronized void resetBuffer() {
+    if (!this.isCls) {
+      super.resetBuffer();
+    }
+  }
+
+  @Override
+  public final synchronized void setBufferSize(final int pSz) {
+    if (!this.isCls) {
+      super.setBufferSize(pSz);
+    }
+  }
+
+  @Override
+  public final synchronized void addCookie(final Cookie pCookie) {
+    if (!this.isCls) {
+      super.addCookie(pCookie);
+    }
+  }
+
+  @Override
+  public final synchronized void setStatus(final int pSc) {
+    if (!this.isCls) {
+      super.setStatus(pSc);
+    }
+  }
+
+  @Override
+  public final synchronized void setHeader(final String pNm,
+    final String pVl) {
+    if (!this.isCls) {
+      super.setHeader(pNm, pVl);
+    }
+  }
+
+  @Override
+  public final synchronized void addHeader(final String pNm,
+    final String pVl) {
+    if (!this.isCls) {
+      super.addHeader(pNm, pVl);
+    }
+  }
+
+  @Override
+  public final synchronized void setDateHeader(final String pNm,
+    final long pVl) {
+    if (!this.isCls) {
+      super.setDateHeader(pNm, pVl);
+    }
+  }
+
+  @Override
+  public final synchronized void addDateHeader(final String pNm,
+    final long pVl) {
+    if (!this.isCls) {
+      super.addDateHeader(pNm, pVl);
+    }
+  }
+
+  @Override
+  public final synchronized void setIntHeader(final String pNm,
+    final int pVl) {
+    if (!this.isCls) {
+      super.setIntHeader(pNm, pVl);
+    }
+  }
+
+  @Override
+  public final synchronized void addIntHeader(final String pNm,
+    final int pVl) {
+    if (!this.isCls) {
+      super.addIntHeader(pNm, pVl);
+    }
+  }
+
+  @Override
+  public final synchronized void setContentType(final String pTy) {
+    if (!this.isCls) {
+      super.setContentType(pTy);
+    }
+  }
+
+  @Override
+  public final synchronized void setCharacterEncoding(final String pEnc) {
+    if (!this.isCls) {
+      super.setCharacterEncoding(pEnc);
+    }
+  }
+
+  @Override
+  public final synchronized void setContentLength(final int pLen) {
+    if (!this.isCls) {
+      super.setContentLength(pLen);
+    }
+  }
+
+  @Override
+  public final synchronized void setContentLengthLong(final long pLen) {
+    if (!this.isCls) {
+      super.setContentLengthLong(pLen);
+    }
+  }
+
+  @Override
+  public final synchronized void setLocale(final Locale pLoc) {
+    if (!this.isCls) {
+      super.setLocale(pLoc);
+    }
+  }
+
+  /**
+   * <p>Guarded output stream.</p>
+   **/
+  private static final class GrdOus extends ServletOutputStream {
+
+    /**
+     * <p>Guard.</p>
+     **/
+    private final RspGrd grd;
+
+    /**
+     * <p>Response's stream.</p>
+     **/
+    private final ServletOutputStream ous;
+
+    /**
+     * <p>Only constructor.</p>
+     * @param pGrd guard
+     * @param pOus response's stream
+     **/
+    GrdOus(final RspGrd pGrd, final ServletOutputStream pOus) {
+      this.grd = pGrd;
+      this.ous = pOus;
+    }
+
+    @Override
+    public void write(final int pBt) throws IOException {
+      synchronized (this.grd) {
+        if (!this.grd.isCls) {
+          this.ous.write(pBt);
+        }
+      }
+    }
+
+    @Override
+    public void write(final byte[] pBts, final int pOfs,
+      final int pLen) throws IOException {
+      synchronized (this.grd) {
+        if (!this.grd.isCls) {
+          this.ous.write(pBts, pOfs, pLen);
+        }
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      synchronized (this.grd) {
+        if (!this.grd.isCls) {
+          this.ous.flush();
+        }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      synchronized (this.grd) {
+        if (!this.grd.isCls) {
+          this.ous.close();
+        }
+      }
+    }
+
+    @Override
+    public boolean isReady() {
+      synchronized (this.grd) {
+        return this.grd.isCls || this.ous.isReady();
+      }
+    }
+
+    @Override
+    public void setWriteListener(final WriteListener pWl) {
+      synchronized (this.grd) {
+        if (!this.grd.isCls) {
+          this.ous.setWriteListener(pWl);
+        }
+      }
+    }
+  }
+
+  /**
+   * <p>Guarded writer.</p>
+   **/
+  private static final class GrdWri extends Writer {
+
+    /**
+     * <p>Guard.</p>
+     **/
+    private final RspGrd grd;
+
+    /**
+     * <p>Response's writer.</p>
+     **/
+    private final PrintWriter wri;
+
+    /**
+     * <p>Only constructor.</p>
+     * @param pGrd guard
+     * @param pWri response's writer
+     **/
+    GrdWri(final RspGrd pGrd, final PrintWriter pWri) {
+      this.grd = pGrd;
+      this.wri = pWri;
+    }
+
+    @Override
+    public void write(final char[] pChs, final int pOfs, final int pLen) {
+      synchronized (this.grd) {
+        if (!this.grd.isCls) {
+          this.wri.write(pChs, pOfs, pLen);
+        }
+      }
+    }
+
+    @Override
+    public void write(final String pStr, final int pOfs, final int pLen) {
+      synchronized (this.grd) {
+        if (!this.grd.isCls) {
+          this.wri.write(pStr, pOfs, pLen);
+        }
+      }
+    }
+
+    @Override
+    public void flush() {
+      synchronized (this.grd) {
+        if (!this.grd.isCls) {
+          this.wri.flush();
+        }
+      }
+    }
+
+    @Override
+    public void close() {
+      synchronized (this.grd) {
+        if (!this.grd.isCls) {
+          this.wri.close();
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,335 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.web;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import org.beigesoft.log.ILog;
+
+/**
+ * <p>Asynchronous security events log. Request thread only fills
+ * pre-allocated slot of ring buffer with event type, IP, port, attempt
+ * and time, background writer formats and logs events. If buffer is full,
+ * then event is dropped and counted, so login flood never blocks
+ * requests on log I/O. Drops and write failures are counted and logged
+ * by writer.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class SecEvs {
+
+  /**
+   * <p>New session.</p>
+   **/
+  public static final int NEWSES = 0;
+
+  /**
+   * <p>New session sample.</p>
+   **/
+  public static final int SMPSES = 1;
+
+  /**
+   * <p>Failed login.</p>
+   **/
+  public static final int FAIL = 2;
+
+  /**
+   * <p>Ban.</p>
+   **/
+  public static final int BAN = 3;
+
+  /**
+   * <p>Default buffer size.</p>
+   **/
+  public static final int SZDEF = 1024;
+
+  /**
+   * <p>Writer's idle park time, milliseconds.</p>
+   **/
+  private static final long PRKMS = 10L;
+
+  /**
+   * <p>Writer's join time on release, milliseconds.</p>
+   **/
+  private static final long JNMS = 5000L;
+
+  /**
+   * <p>Log.</p>
+   **/
+  private final ILog log;
+
+  /**
+   * <p>Slots, size is power of 2.</p>
+   **/
+  private final Slot[] slots;
+
+  /**
+   * <p>Index mask.</p>
+   **/
+  private final int msk;
+
+  /**
+   * <p>Next sequence to claim.</p>
+   **/
+  private final AtomicLong hd = new AtomicLong();
+
+  /**
+   * <p>Next sequence to write, it's changed only by writer.</p>
+   **/
+  private final AtomicLong tl = new AtomicLong();
+
+  /**
+   * <p>Dropped events.</p>
+   **/
+  private final AtomicLong drpd = new AtomicLong();
+
+  /**
+   * <p>Events that writer failed to log.</p>
+   **/
+  private final AtomicLong fld = new AtomicLong();
+
+  /**
+   * <p>Writer.</p>
+   **/
+  private final Thread wrtr;
+
+  /**
+   * <p>Whether it's running.</p>
+   **/
+  private volatile boolean isRun = true;
+
+  /**
+   * <p>Only constructor, it starts writer.</p>
+   * @param pLog log
+   * @param pSz buffer size, it's rounded up to power of 2
+   **/
+  public SecEvs(final ILog pLog, final int pSz) {
+    this.log = pLog;
+    int sz = Integer.highestOneBit(Math.max(pSz, 2) - 1) << 1;
+    this.slots = new Slot[sz];
+    for (int i = 0; i < sz; i++) {
+      this.slots[i] = new Slot();
+    }
+    this.msk = sz - 1;
+    this.wrtr = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        drain();
+      }
+    }, "secevs");
+    this.wrtr.setDaemon(true);
+    this.wrtr.start();
+  }
+
+  /**
+   * <p>Adds event, it never blocks.</p>
+   * @param pCls source class
+   * @param pTy event type, e.g. FAIL
+   * @param pIp remote address
+   * @param pPort remote port
+   * @param pAtt attempt number
+   * @return false if buffer is full and event is dropped
+   **/
+  public final boolean add(final Class<?> pCls, final int pTy,
+    final String pIp, final int pPort, final int pAtt) {
+    long h;
+    do {
+      h = this.hd.get();
+      if (h - this.tl.get() >= this.slots.length) {
+        this.drpd.incrementAndGet();
+        return false;
+      }
+    } while (!this.hd.compareAndSet(h, h + 1L));
+    Slot sl = this.slots[(int) h & this.msk];
+    sl.cls = pCls;
+    sl.ty = pTy;
+    sl.ip = pIp;
+    sl.port = pPort;
+    sl.att = pAtt;
+    sl.tm = System.currentTimeMillis();
+    sl.seq = h;
+    return true;
+  }
+
+  /**
+   * <p>Stops writer after it logs remaining events.</p>
+   **/
+  public final void release() {
+    this.isRun = false;
+    LockSupport.unpark(this.wrtr);
+    try {
+      this.wrtr.join(JNMS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * <p>Writer's loop.</p>
+   **/
+  private void drain() {
+    StringBuilder sb = new StringBuilder();
+    long lstDrp = 0L;
+    while (true) {
+      long t = this.tl.get();
+      Slot sl = this.slots[(int) t & this.msk];
+      if (sl.seq == t) {
+        sb.setLength(0);
+        try {
+          wrt(this.log, sl.cls, sl.ty, sl.ip, sl.port, sl.att, sl.tm, sb);
+        } catch (Exception e) {
+          this.fld.incrementAndGet();
+          try {
+            this.log.error(null, getClass(), "Can't log security event", e);
+          } catch (Exception e1) {
+            //log is broken, it's only counted, writer must survive
+          }
+        }
+        sl.cls = null;
+        sl.ip = null;
+        this.tl.lazySet(t + 1L);
+        continue;
+      }
+      long drp = this.drpd.get();
+      if (drp != lstDrp) {
+        this.log.warn(null, getClass(), "Security events dropped: "
+          + (drp - lstDrp));
+        lstDrp = drp;
+      }
+      if (!this.isRun) {
+        break;
+      }
+      LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(PRKMS));
+    }
+  }
+
+  /**
+   * <p>Formats and logs event, it's also used for synchronous logging
+   * when there is no asynchronous log.</p>
+   * @param pLog log
+   * @param pCls source class
+   * @param pTy event type
+   * @param pIp remote address
+   * @param pPort remote port
+   * @param pAtt attempt number
+   * @param pTm time, milliseconds
+   * @param pSb empty builder
+   **/
+  public static void wrt(final ILog pLog, final Class<?> pCls,
+    final int pTy, final String pIp, final int pPort, final int pAtt,
+      final long pTm, final StringBuilder pSb) {
+    switch (pTy) {
+      case NEWSES:
+        pSb.append("New session from IP/port: ");
+        break;
+      case SMPSES:
+        pSb.append("New session sample from IP/port: ");
+        break;
+      case FAIL:
+        pSb.append("Fail login attempt from IP/port/attempt: ");
+        break;
+      default:
+        pSb.append("Ban login attempt from IP/port/attempt: ");
+        break;
+    }
+    pSb.append(pIp).append('/').append(pPort);
+    if (pTy == FAIL || pTy == BAN) {
+      pSb.append('/').append(pAtt);
+    }
+    pSb.append(", time: ").append(pTm);
+    String msg = pSb.toString();
+    if (pTy == FAIL) {
+      pLog.warn(null, pCls, msg);
+    } else if (pTy == BAN) {
+      pLog.error(null, pCls, msg);
+    } else {
+      pLog.info(null, pCls, msg);
+    }
+  }
+
+  /**
+   * <p>Event slot.</p>
+   **/
+  private static final class Slot {
+
+    /**
+     * <p>Published sequence, it's written last.</p>
+     **/
+    private volatile long seq = -1L;
+
+    /**
+     * <p>Source class.</p>
+     **/
+    private Class<?> cls;
+
+    /**
+     * <p>Event type.</p>
+     **/
+    private int ty;
+
+    /**
+     * <p>Remote address.</p>
+     **/
+    private String ip;
+
+    /**
+     * <p>Remote port.</p>
+     **/
+    private int port;
+
+    /**
+     * <p>Attempt number.</p>
+     **/
+    private int att;
+
+    /**
+     * <p>Time, milliseconds.</p>
+     **/
+    private long tm;
+  }
+
+  //Simple getters:
+  /**
+   * <p>Getter for drpd.</p>
+   * @return dropped events count
+   **/
+  public final long getDrpd() {
+    return this.drpd.get();
+  }
+
+  /**
+   * <p>Getter for fld.</p>
+   * @return events that writer failed to log count
+   **/
+  public final long getFld() {
+    return this.fld.get();
+  }
+}
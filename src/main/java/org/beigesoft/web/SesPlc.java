@@ -0,0 +1,89 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.web;
+
+import java.util.regex.Pattern;
+
+import javax.servlet.http.HttpServletRequest;
+
+/**
+ * <p>Session creation policy by patterns. Request with user agent
+ * matched "botUa" never creates session (for well-behaved crawlers),
+ * otherwise if "crPth" is set, then only request which servlet path
+ * matches it creates session, e.g. "/(login|cart|acc).*".</p>
+ *
+ * @author Yury Demidenko
+ */
+public class SesPlc implements ISesPlc {
+
+  /**
+   * <p>Bots user agents pattern, NULL means no bots filter.</p>
+   **/
+  private final Pattern botUa;
+
+  /**
+   * <p>Servlet paths that may create session, NULL means any.</p>
+   **/
+  private final Pattern crPth;
+
+  /**
+   * <p>Only constructor.</p>
+   * @param pBotUa bots user agents regex or NULL
+   * @param pCrPth servlet paths regex or NULL
+   **/
+  public SesPlc(final String pBotUa, final String pCrPth) {
+    if (pBotUa == null) {
+      this.botUa = null;
+    } else {
+      this.botUa = Pattern.compile(pBotUa, Pattern.CASE_INSENSITIVE);
+    }
+    if (pCrPth == null) {
+      this.crPth = null;
+    } else {
+      this.crPth = Pattern.compile(pCrPth);
+    }
+  }
+
+  /**
+   * <p>Checks if request may create session.</p>
+   * @param pReq HTTP request without session
+   * @return if may
+   **/
+  @Override
+  public final boolean mayCre(final HttpServletRequest pReq) {
+    if (this.botUa != null) {
+      String ua = pReq.getHeader("User-Agent");
+      if (ua == null || this.botUa.matcher(ua).find()) {
+        return false;
+      }
+    }
+    return this.crPth == null
+      || this.crPth.matcher(pReq.getServletPath()).matches();
+  }
+}
@@ -28,6 +28,8 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package org.beigesoft.web;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpSession;
 
@@ -35,11 +37,94 @@ import org.beigesoft.log.ILog;
 import org.beigesoft.srv.II18n;
 
 /**
- * <p>Service that tracks sessions.</p>
+ * <p>Service that tracks sessions.
+ * In aggregated mode (isAgr) it doesn't create session for request that
+ * isn't allowed by policy (e.g. crawler), and new sessions aren't logged
+ * one by one, instead it counts them and logs summary once per "smpMs"
+ * plus every "smpN"-th new session details.</p>
  * @author Yury Demidenko
  */
 public class SesTrk implements ISesTrk {
 
+  /**
+   * <p>Whether it's aggregated mode.</p>
+   **/
+  private boolean isAgr;
+
+  /**
+   * <p>Session creation policy in aggregated mode,
+   * NULL means any request creates session.</p>
+   **/
+  private ISesPlc sesPlc;
+
+  /**
+   * <p>Logs every smpN-th new session details, 0 means none.</p>
+   **/
+  private long smpN = 100L;
+
+  /**
+   * <p>Summary period, milliseconds.</p>
+   **/
+  private long smpMs = 60000L;
+
+  /**
+   * <p>New sessions counter.</p>
+   **/
+  private final StrCnt newCnt = new StrCnt();
+
+  /**
+   * <p>Requests without session that aren't allowed to create it.</p>
+   **/
+  private final StrCnt nsCnt = new StrCnt();
+
+  /**
+   * <p>Sample sequence.</p>
+   **/
+  private final AtomicLong smpSeq = new AtomicLong();
+
+  /**
+   * <p>Last summary time.</p>
+   **/
+  private final AtomicLong smrTm = new AtomicLong(System.currentTimeMillis());
+
+  /**
+   * <p>New sessions count on last summary, guarded by smrTm CAS.</p>
+   **/
+  private long smrNew;
+
+  /**
+   * <p>Not created sessions count on last summary,
+   * guarded by smrTm CAS.</p>
+   **/
+  private long smrNs;
+
+  /**
+   * <p>Ban list (e.g. shared by cluster nodes) by remote address,
+   * NULL means bans live only in session.</p>
+   **/
+  private IBanLst banLst;
+
+  /**
+   * <p>Ban time in ban list, milliseconds.</p>
+   **/
+  private long banMs = 1800000L;
+
+  /**
+   * <p>Asynchronous security events log,
+   * NULL means synchronous logging.</p>
+   **/
+  private volatile SecEvs secEvs;
+
+  /**
+   * <p>Top addresses by tracked requests, NULL means not counted.</p>
+   **/
+  private HvyHtr hhRq;
+
+  /**
+   * <p>Top addresses by failed logins, NULL means not counted.</p>
+   **/
+  private HvyHtr hhFl;
+
   /**
    * <p>Log.</p>
    **/
@@ -57,13 +142,70 @@ public class SesTrk implements ISesTrk {
    **/
   @Override
   public final void track(final HttpServletRequest pReq) throws Exception {
+    if (this.hhRq != null) {
+      this.hhRq.add(pReq.getRemoteAddr());
+    }
+    if (this.banLst != null && this.banLst.isBanned(pReq.getRemoteAddr())) {
+      //banned by other node or before restart, session isn't created:
+      HttpSession session = pReq.getSession(false);
+      if (session != null) {
+        session.setAttribute("isBanned", Boolean.TRUE);
+      }
+      pReq.setAttribute("isBanned", Boolean.TRUE);
+      return;
+    }
+    if (this.isAgr) {
+      trackAgr(pReq);
+      return;
+    }
     HttpSession session = pReq.getSession();
     if (session.getAttribute("newSesTrkd") == null) {
       // scamware can make any headers, so user-agent is not informative
-      String msg = "New session from IP/port/host: " + pReq.getRemoteAddr()
-        + "/" + pReq.getRemotePort() + "/" + pReq.getRemoteHost();
-      this.log.info(null, getClass(), msg);
+      ev(SecEvs.NEWSES, pReq.getRemoteAddr(), pReq.getRemotePort(), 0);
+      session.setAttribute("newSesTrkd", Boolean.TRUE);
+    }
+  }
+
+  /**
+   * <p>Tracks new session in aggregated mode.</p>
+   * @param pReq HTTP request
+   **/
+  private void trackAgr(final HttpServletRequest pReq) {
+    HttpSession session = pReq.getSession(false);
+    if (session == null) {
+      if (this.sesPlc != null && !this.sesPlc.mayCre(pReq)) {
+        this.nsCnt.inc();
+        smry();
+        return;
+      }
+      session = pReq.getSession();
+    }
+    if (session.getAttribute("newSesTrkd") == null) {
       session.setAttribute("newSesTrkd", Boolean.TRUE);
+      this.newCnt.inc();
+      if (this.smpN > 0L && this.smpSeq.incrementAndGet() % this.smpN == 0L) {
+        ev(SecEvs.SMPSES, pReq.getRemoteAddr(), pReq.getRemotePort(), 0);
+      }
+      smry();
+    }
+  }
+
+  /**
+   * <p>Logs new sessions summary if period is over,
+   * only one thread logs it.</p>
+   **/
+  private void smry() {
+    long now = System.currentTimeMillis();
+    long lst = this.smrTm.get();
+    if (now - lst >= this.smpMs && this.smrTm.compareAndSet(lst, now)) {
+      long nw = this.newCnt.sum();
+      long ns = this.nsCnt.sum();
+      String msg = "Sessions for last " + (now - lst) / 1000L
+        + "s, new/not created: " + (nw - this.smrNew) + "/"
+          + (ns - this.smrNs);
+      this.smrNew = nw;
+      this.smrNs = ns;
+      this.log.info(null, getClass(), msg);
     }
   }
 
@@ -74,7 +216,16 @@ public class SesTrk implements ISesTrk {
    **/
   @Override
   public final void fail(final HttpServletRequest pReq) throws Exception {
+    if (this.hhFl != null) {
+      this.hhFl.add(pReq.getRemoteAddr());
+    }
     HttpSession session = pReq.getSession();
+    if (this.banLst != null && this.banLst.isBanned(pReq.getRemoteAddr())) {
+      //already banned, it isn't logged to avoid log flooding:
+      session.setAttribute("isBanned", Boolean.TRUE);
+      pReq.setAttribute("loginBanJsp", this.i18n.getMsg("loginBan"));
+      return;
+    }
     Integer flCntAtmp = (Integer) session.getAttribute("flCntAtmp");
     if (flCntAtmp == null) {
       flCntAtmp = 0;
@@ -85,19 +236,53 @@ public class SesTrk implements ISesTrk {
       pReq.setAttribute("loginErrorJsp",
         i18n.getMsg("invalid_user_name_or_password"));
       // scamware can make any headers, so user-agent is not informative
-      String msg = "Fail login attempt from IP/port/host/attempt: "
-        + pReq.getRemoteAddr() + "/" + pReq.getRemotePort()
-          + "/" + pReq.getRemoteHost() + "/" + flCntAtmp;
-      log.warn(null, getClass(), msg);
+      ev(SecEvs.FAIL, pReq.getRemoteAddr(), pReq.getRemotePort(), flCntAtmp);
     } else {
       // banned for web.xml session-timeout minits
       session.setAttribute("isBanned", Boolean.TRUE);
+      if (this.banLst != null) {
+        this.banLst.ban(pReq.getRemoteAddr(),
+          System.currentTimeMillis() + this.banMs);
+      }
       pReq.setAttribute("loginBanJsp", this.i18n.getMsg("loginBan"));
-      String msg = "Ban login attempt from IP/port/host/attempt: "
-        + pReq.getRemoteAddr() + "/" + pReq.getRemotePort()
-          + "/" + pReq.getRemoteHost() + "/" + flCntAtmp;
-      log.error(null, getClass(), msg);
+      ev(SecEvs.BAN, pReq.getRemoteAddr(), pReq.getRemotePort(), flCntAtmp);
+    }
+  }
+
+  /**
+   * <p>Records security event asynchronously if there is
+   * asynchronous log, otherwise logs it.</p>
+   * @param pTy event type, e.g. SecEvs.FAIL
+   * @param pIp remote address
+   * @param pPort remote port
+   * @param pAtt attempt number
+   **/
+  private void ev(final int pTy, final String pIp, final int pPort,
+    final int pAtt) {
+    SecEvs se = this.secEvs;
+    if (se != null) {
+      se.add(getClass(), pTy, pIp, pPort, pAtt);
+    } else {
+      SecEvs.wrt(this.log, getClass(), pTy, pIp, pPort, pAtt,
+        System.currentTimeMillis(), new StringBuilder());
+    }
+  }
+
+  /**
+   * <p>Checks if session or remote address (by ban list) is banned,
+   * it doesn't create session.</p>
+   * @param pReq HTTP request
+   * @return if banned
+   * @throws Exception - an exception
+   **/
+  public final boolean isBanned(
+    final HttpServletRequest pReq) throws Exception {
+    if (this.banLst != null && this.banLst.isBanned(pReq.getRemoteAddr())) {
+      return true;
     }
+    HttpSession session = pReq.getSession(false);
+    return session != null
+      && Boolean.TRUE.equals(session.getAttribute("isBanned"));
   }
 
   //SGS:
@@ -117,6 +302,150 @@ public class SesTrk implements ISesTrk {
     this.log = pLog;
   }
 
+  /**
+   * <p>Getter for secEvs.</p>
+   * @return SecEvs
+   **/
+  public final SecEvs getSecEvs() {
+    return this.secEvs;
+  }
+
+  /**
+   * <p>Setter for secEvs.</p>
+   * @param pSecEvs reference
+   **/
+  public final void setSecEvs(final SecEvs pSecEvs) {
+    this.secEvs = pSecEvs;
+  }
+
+  /**
+   * <p>Getter for hhRq.</p>
+   * @return HvyHtr
+   **/
+  public final HvyHtr getHhRq() {
+    return this.hhRq;
+  }
+
+  /**
+   * <p>Setter for hhRq.</p>
+   * @param pHhRq reference
+   **/
+  public final void setHhRq(final HvyHtr pHhRq) {
+    this.hhRq = pHhRq;
+  }
+
+  /**
+   * <p>Getter for hhFl.</p>
+   * @return HvyHtr
+   **/
+  public final HvyHtr getHhFl() {
+    return this.hhFl;
+  }
+
+  /**
+   * <p>Setter for hhFl.</p>
+   * @param pHhFl reference
+   **/
+  public final void setHhFl(final HvyHtr pHhFl) {
+    this.hhFl = pHhFl;
+  }
+
+  /**
+   * <p>Getter for banLst.</p>
+   * @return IBanLst
+   **/
+  public final IBanLst getBanLst() {
+    return this.banLst;
+  }
+
+  /**
+   * <p>Setter for banLst.</p>
+   * @param pBanLst reference
+   **/
+  public final void setBanLst(final IBanLst pBanLst) {
+    this.banLst = pBanLst;
+  }
+
+  /**
+   * <p>Getter for banMs.</p>
+   * @return long
+   **/
+  public final long getBanMs() {
+    return this.banMs;
+  }
+
+  /**
+   * <p>Setter for banMs.</p>
+   * @param pBanMs reference
+   **/
+  public final void setBanMs(final long pBanMs) {
+    this.banMs = pBanMs;
+  }
+
+  /**
+   * <p>Getter for isAgr.</p>
+   * @return boolean
+   **/
+  public final boolean getIsAgr() {
+    return this.isAgr;
+  }
+
+  /**
+   * <p>Setter for isAgr.</p>
+   * @param pIsAgr reference
+   **/
+  public final void setIsAgr(final boolean pIsAgr) {
+    this.isAgr = pIsAgr;
+  }
+
+  /**
+   * <p>Getter for sesPlc.</p>
+   * @return ISesPlc
+   **/
+  public final ISesPlc getSesPlc() {
+    return this.sesPlc;
+  }
+
+  /**
+   * <p>Setter for sesPlc.</p>
+   * @param pSesPlc reference
+   **/
+  public final void setSesPlc(final ISesPlc pSesPlc) {
+    this.sesPlc = pSesPlc;
+  }
+
+  /**
+   * <p>Getter for smpN.</p>
+   * @return long
+   **/
+  public final long getSmpN() {
+    return this.smpN;
+  }
+
+  /**
+   * <p>Setter for smpN.</p>
+   * @param pSmpN reference
+   **/
+  public final void setSmpN(final long pSmpN) {
+    this.smpN = pSmpN;
+  }
+
+  /**
+   * <p>Getter for smpMs.</p>
+   * @return long
+   **/
+  public final long getSmpMs() {
+    return this.smpMs;
+  }
+
+  /**
+   * <p>Setter for smpMs.</p>
+   * @param pSmpMs reference
+   **/
+  public final void setSmpMs(final long pSmpMs) {
+    this.smpMs = pSmpMs;
+  }
+
   /**
    * <p>Getter for i18n.</p>
    * @return II18n
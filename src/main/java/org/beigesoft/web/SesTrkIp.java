@@ -0,0 +1,599 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.web;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpSession;
+
+import org.beigesoft.log.ILog;
+import org.beigesoft.srv.II18n;
+
+/**
+ * <p>Service that tracks failed logins by remote address instead of
+ * session, so attacker can't reset counter by dropping cookie, and
+ * scanners don't create sessions. Attempts are counted in sliding
+ * window (previous and current window counts packed into single
+ * atomic long, so update is lock-free CAS). When attempts exceed
+ * "maxAtt", address is banned for "banMs". Map size is bounded by
+ * "maxEnt", stale entries (i.e. ones not counted in last two windows)
+ * are evicted by single thread at a time and not more often than once
+ * per second. Entries with active window are never evicted, and banned
+ * ones are evicted only if there is ban list that keeps bans. If map
+ * is still full, then new address is counted in fixed size overflow
+ * sketch (count-min of same sliding window counters), so every fail
+ * is counted and filling map with throwaway addresses doesn't give
+ * unlimited attempts. Sketch only overestimates, so under such attack
+ * address that isn't in map may be banned earlier.
+ * Behind reverse proxy, container must set real remote address
+ * (e.g. Tomcat's RemoteIpValve).</p>
+ *
+ * @author Yury Demidenko
+ */
+public class SesTrkIp implements ISesTrk {
+
+  /**
+   * <p>Default max attempts in window.</p>
+   **/
+  public static final int MAXATTDEF = 5;
+
+  /**
+   * <p>Default window, milliseconds.</p>
+   **/
+  public static final long WINMSDEF = 900000L;
+
+  /**
+   * <p>Default ban time, milliseconds.</p>
+   **/
+  public static final long BANMSDEF = 1800000L;
+
+  /**
+   * <p>Default max tracked addresses.</p>
+   **/
+  public static final int MAXENTDEF = 100000;
+
+  /**
+   * <p>Count bits.</p>
+   **/
+  private static final int CNTBTS = 20;
+
+  /**
+   * <p>Count mask.</p>
+   **/
+  private static final long CNTMSK = (1L << CNTBTS) - 1L;
+
+  /**
+   * <p>Window index mask.</p>
+   **/
+  private static final long IDXMSK = (1L << (Long.SIZE - 2 * CNTBTS)) - 1L;
+
+  /**
+   * <p>Min interval between evictions, milliseconds.</p>
+   **/
+  private static final long EVCMS = 1000L;
+
+  /**
+   * <p>Overflow sketch depth.</p>
+   **/
+  private static final int OVFDPT = 4;
+
+  /**
+   * <p>Overflow sketch width, power of 2.</p>
+   **/
+  private static final int OVFWD = 1024;
+
+  /**
+   * <p>Addresses states.</p>
+   **/
+  private final ConcurrentMap<String, IpEnt> ents =
+    new ConcurrentHashMap<String, IpEnt>();
+
+  /**
+   * <p>Whether eviction is in progress.</p>
+   **/
+  private final AtomicBoolean isEvc = new AtomicBoolean();
+
+  /**
+   * <p>Last eviction time, milliseconds.</p>
+   **/
+  private final AtomicLong evcAt = new AtomicLong();
+
+  /**
+   * <p>Overflow sketch, OVFDPT rows by OVFWD counters.</p>
+   **/
+  private final IpEnt[] ovf;
+
+  /**
+   * <p>Only constructor.</p>
+   **/
+  public SesTrkIp() {
+    this.ovf = new IpEnt[OVFDPT * OVFWD];
+    for (int i = 0; i < this.ovf.length; i++) {
+      this.ovf[i] = new IpEnt();
+    }
+  }
+
+  /**
+   * <p>Ban list (e.g. shared by cluster nodes),
+   * NULL means bans live only in this node.</p>
+   **/
+  private volatile IBanLst banLst;
+
+  /**
+   * <p>Asynchronous security events log,
+   * NULL means synchronous logging.</p>
+   **/
+  private volatile SecEvs secEvs;
+
+  /**
+   * <p>Top addresses by tracked requests, NULL means not counted.</p>
+   **/
+  private HvyHtr hhRq;
+
+  /**
+   * <p>Top addresses by failed logins, NULL means not counted.</p>
+   **/
+  private HvyHtr hhFl;
+
+  /**
+   * <p>Log.</p>
+   **/
+  private ILog log;
+
+  /**
+   * <p>I18N service.</p>
+   **/
+  private II18n i18n;
+
+  /**
+   * <p>Max attempts in window.</p>
+   **/
+  private volatile int maxAtt = MAXATTDEF;
+
+  /**
+   * <p>Window, milliseconds.</p>
+   **/
+  private volatile long winMs = WINMSDEF;
+
+  /**
+   * <p>Ban time, milliseconds.</p>
+   **/
+  private volatile long banMs = BANMSDEF;
+
+  /**
+   * <p>Max tracked addresses.</p>
+   **/
+  private volatile int maxEnt = MAXENTDEF;
+
+  /**
+   * <p>Marks banned request, it never creates session.</p>
+   * @param pReq HTTP request
+   * @throws Exception - an exception
+   **/
+  @Override
+  public final void track(final HttpServletRequest pReq) throws Exception {
+    if (this.hhRq != null) {
+      this.hhRq.add(pReq.getRemoteAddr());
+    }
+    isBanned(pReq);
+  }
+
+  /**
+   * <p>Tracks login fail.</p>
+   * @param pReq HTTP request
+   * @throws Exception - an exception
+   **/
+  @Override
+  public final void fail(final HttpServletRequest pReq) throws Exception {
+    String ip = pReq.getRemoteAddr();
+    if (this.hhFl != null) {
+      this.hhFl.add(ip);
+    }
+    IBanLst bl = this.banLst;
+    if (bl != null && bl.isBanned(ip)) {
+      //banned by other node or before restart, it isn't logged:
+      markBan(pReq);
+      return;
+    }
+    long now = System.currentTimeMillis();
+    IpEnt ent = lazEnt(ip, now);
+    int att;
+    if (ent != null) {
+      att = ent.hit(now, this.winMs);
+    } else {
+      att = ovfHit(ip, now);
+    }
+    if (ent != null && ent.banTo > now) {
+      //already banned, it isn't logged to avoid log flooding:
+      markBan(pReq);
+    } else if (att <= this.maxAtt) {
+      pReq.setAttribute("loginErrorJsp",
+        this.i18n.getMsg("invalid_user_name_or_password"));
+      // scamware can make any headers, so user-agent is not informative
+      ev(SecEvs.FAIL, ip, pReq.getRemotePort(), att);
+    } else if (ent == null && att > this.maxAtt + 1) {
+      //overflow address is banned while its window is active:
+      markBan(pReq);
+    } else {
+      long banTo = now + this.banMs;
+      if (ent != null) {
+        ent.banTo = banTo;
+      }
+      if (bl != null) {
+        bl.ban(ip, banTo);
+      }
+      markBan(pReq);
+      ev(SecEvs.BAN, ip, pReq.getRemotePort(), att);
+    }
+  }
+
+  /**
+   * <p>Marks banned login request like session tracker does,
+   * i.e. request attributes "isBanned", "loginBanJsp" and existing
+   * session's attribute "isBanned", session isn't created.</p>
+   * @param pReq HTTP request
+   **/
+  private void markBan(final HttpServletRequest pReq) {
+    HttpSession session = pReq.getSession(false);
+    if (session != null) {
+      session.setAttribute("isBanned", Boolean.TRUE);
+    }
+    pReq.setAttribute("isBanned", Boolean.TRUE);
+    pReq.setAttribute("loginBanJsp", this.i18n.getMsg("loginBan"));
+  }
+
+  /**
+   * <p>Records security event asynchronously if there is
+   * asynchronous log, otherwise logs it.</p>
+   * @param pTy event type, e.g. SecEvs.FAIL
+   * @param pIp remote address
+   * @param pPort remote port
+   * @param pAtt attempt number
+   **/
+  private void ev(final int pTy, final String pIp, final int pPort,
+    final int pAtt) {
+    SecEvs se = this.secEvs;
+    if (se != null) {
+      se.add(getClass(), pTy, pIp, pPort, pAtt);
+    } else {
+      SecEvs.wrt(this.log, getClass(), pTy, pIp, pPort, pAtt,
+        System.currentTimeMillis(), new StringBuilder());
+    }
+  }
+
+  /**
+   * <p>Checks if request's address is banned. Banned request
+   * gets attribute "isBanned".</p>
+   * @param pReq HTTP request
+   * @return if banned
+   * @throws Exception - an exception
+   **/
+  public final boolean isBanned(
+    final HttpServletRequest pReq) throws Exception {
+    String ip = pReq.getRemoteAddr();
+    IpEnt ent = this.ents.get(ip);
+    IBanLst bl = this.banLst;
+    if (ent != null && ent.banTo > System.currentTimeMillis()
+      || bl != null && bl.isBanned(ip)) {
+      pReq.setAttribute("isBanned", Boolean.TRUE);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * <p>Gets tracked addresses count.</p>
+   * @return count
+   **/
+  public final int size() {
+    return this.ents.size();
+  }
+
+  /**
+   * <p>Lazy gets address entry, evicts stale ones if map is full.</p>
+   * @param pIp address
+   * @param pNow current time
+   * @return entry or NULL if map is still full, i.e. address should
+   * be counted in overflow sketch
+   **/
+  private IpEnt lazEnt(final String pIp, final long pNow) {
+    IpEnt rz = this.ents.get(pIp);
+    if (rz == null) {
+      if (this.ents.size() >= this.maxEnt) {
+        long lst = this.evcAt.get();
+        if (pNow - lst >= EVCMS && this.evcAt.compareAndSet(lst, pNow)) {
+          evict();
+        }
+        if (this.ents.size() >= this.maxEnt) {
+          return null;
+        }
+      }
+      rz = new IpEnt();
+      IpEnt ex = this.ents.putIfAbsent(pIp, rz);
+      if (ex != null) {
+        rz = ex;
+      }
+    }
+    return rz;
+  }
+
+  /**
+   * <p>Counts fail of address that isn't in map in overflow sketch.</p>
+   * @param pIp address
+   * @param pNow current time
+   * @return estimated attempts in sliding window including this one
+   **/
+  private int ovfHit(final String pIp, final long pNow) {
+    int rz = Integer.MAX_VALUE;
+    for (int i = 0; i < OVFDPT; i++) {
+      int idx = i * OVFWD + (HvyHtr.hsh(pIp, i) & (OVFWD - 1));
+      rz = Math.min(rz, this.ovf[idx].hit(pNow, this.winMs));
+    }
+    return rz;
+  }
+
+  /**
+   * <p>Evicts entries which aren't counted in last two windows
+   * and aren't banned (or banned ones if ban list keeps bans).
+   * Only one thread evicts, others don't wait.</p>
+   **/
+  private void evict() {
+    if (!this.isEvc.compareAndSet(false, true)) {
+      return;
+    }
+    try {
+      long now = System.currentTimeMillis();
+      long idx = (now / this.winMs) & IDXMSK;
+      boolean isBl = this.banLst != null;
+      Iterator<IpEnt> it = this.ents.values().iterator();
+      while (it.hasNext()) {
+        IpEnt ent = it.next();
+        long st = ent.st.get();
+        long age = (idx - (st >>> (2 * CNTBTS))) & IDXMSK;
+        if (age > 1L && (isBl || ent.banTo <= now)) {
+          it.remove();
+        }
+      }
+    } finally {
+      this.isEvc.set(false);
+    }
+  }
+
+  /**
+   * <p>Address state.</p>
+   **/
+  private static final class IpEnt {
+
+    /**
+     * <p>Packed window index, previous and current window counts.</p>
+     **/
+    private final AtomicLong st = new AtomicLong();
+
+    /**
+     * <p>Banned until, milliseconds.</p>
+     **/
+    private volatile long banTo;
+
+    /**
+     * <p>Counts attempt.</p>
+     * @param pNow current time
+     * @param pWinMs window
+     * @return attempts in sliding window including this one
+     **/
+    int hit(final long pNow, final long pWinMs) {
+      long idx = (pNow / pWinMs) & IDXMSK;
+      double frc = (pNow % pWinMs) / (double) pWinMs;
+      while (true) {
+        long old = this.st.get();
+        long oidx = old >>> (2 * CNTBTS);
+        long prv = (old >>> CNTBTS) & CNTMSK;
+        long cur = old & CNTMSK;
+        if (oidx != idx) {
+          if (((idx - oidx) & IDXMSK) == 1L) {
+            prv = cur;
+          } else {
+            prv = 0L;
+          }
+          cur = 0L;
+        }
+        cur = Math.min(cur + 1L, CNTMSK);
+        long nw = (idx << (2 * CNTBTS)) | (prv << CNTBTS) | cur;
+        if (this.st.compareAndSet(old, nw)) {
+          return (int) Math.round(prv * (1.0 - frc) + cur);
+        }
+      }
+    }
+  }
+
+  //Simple getters and setters:
+  /**
+   * <p>Getter for log.</p>
+   * @return ILog
+   **/
+  public final ILog getLog() {
+    return this.log;
+  }
+
+  /**
+   * <p>Setter for log.</p>
+   * @param pLog reference
+   **/
+  public final void setLog(final ILog pLog) {
+    this.log = pLog;
+  }
+
+  /**
+   * <p>Getter for i18n.</p>
+   * @return II18n
+   **/
+  public final II18n getI18n() {
+    return this.i18n;
+  }
+
+  /**
+   * <p>Setter for i18n.</p>
+   * @param pI18n reference
+   **/
+  public final void setI18n(final II18n pI18n) {
+    this.i18n = pI18n;
+  }
+
+  /**
+   * <p>Getter for secEvs.</p>
+   * @return SecEvs
+   **/
+  public final SecEvs getSecEvs() {
+    return this.secEvs;
+  }
+
+  /**
+   * <p>Setter for secEvs.</p>
+   * @param pSecEvs reference
+   **/
+  public final void setSecEvs(final SecEvs pSecEvs) {
+    this.secEvs = pSecEvs;
+  }
+
+  /**
+   * <p>Getter for hhRq.</p>
+   * @return HvyHtr
+   **/
+  public final HvyHtr getHhRq() {
+    return this.hhRq;
+  }
+
+  /**
+   * <p>Setter for hhRq.</p>
+   * @param pHhRq reference
+   **/
+  public final void setHhRq(final HvyHtr pHhRq) {
+    this.hhRq = pHhRq;
+  }
+
+  /**
+   * <p>Getter for hhFl.</p>
+   * @return HvyHtr
+   **/
+  public final HvyHtr getHhFl() {
+    return this.hhFl;
+  }
+
+  /**
+   * <p>Setter for hhFl.</p>
+   * @param pHhFl reference
+   **/
+  public final void setHhFl(final HvyHtr pHhFl) {
+    this.hhFl = pHhFl;
+  }
+
+  /**
+   * <p>Getter for banLst.</p>
+   * @return IBanLst
+   **/
+  public final IBanLst getBanLst() {
+    return this.banLst;
+  }
+
+  /**
+   * <p>Setter for banLst.</p>
+   * @param pBanLst reference
+   **/
+  public final void setBanLst(final IBanLst pBanLst) {
+    this.banLst = pBanLst;
+  }
+
+  /**
+   * <p>Getter for maxAtt.</p>
+   * @return int
+   **/
+  public final int getMaxAtt() {
+    return this.maxAtt;
+  }
+
+  /**
+   * <p>Setter for maxAtt.</p>
+   * @param pMaxAtt reference
+   **/
+  public final void setMaxAtt(final int pMaxAtt) {
+    this.maxAtt = pMaxAtt;
+  }
+
+  /**
+   * <p>Getter for winMs.</p>
+   * @return long
+   **/
+  public final long getWinMs() {
+    return this.winMs;
+  }
+
+  /**
+   * <p>Setter for winMs.</p>
+   * @param pWinMs reference
+   **/
+  public final void setWinMs(final long pWinMs) {
+    this.winMs = pWinMs;
+  }
+
+  /**
+   * <p>Getter for banMs.</p>
+   * @return long
+   **/
+  public final long getBanMs() {
+    return this.banMs;
+  }
+
+  /**
+   * <p>Setter for banMs.</p>
+   * @param pBanMs reference
+   **/
+  public final void setBanMs(final long pBanMs) {
+    this.banMs = pBanMs;
+  }
+
+  /**
+   * <p>Getter for maxEnt.</p>
+   * @return int
+   **/
+  public final int getMaxEnt() {
+    return this.maxEnt;
+  }
+
+  /**
+   * <p>Setter for maxEnt.</p>
+   * @param pMaxEnt reference
+   **/
+  public final void setMaxEnt(final int pMaxEnt) {
+    this.maxEnt = pMaxEnt;
+  }
+}
@@ -0,0 +1,84 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.web;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>Striped counter for hot paths. Threads add into different cells
+ * (each cell is on its own cache line), sum is computed on reading,
+ * so concurrent adding doesn't contend on single variable.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class StrCnt {
+
+  /**
+   * <p>Stripes count, power of 2.</p>
+   **/
+  private static final int STRPS = 16;
+
+  /**
+   * <p>Longs per cache line.</p>
+   **/
+  private static final int PAD = 8;
+
+  /**
+   * <p>Cells, every PAD-th one is used.</p>
+   **/
+  private final AtomicLongArray cls = new AtomicLongArray(STRPS * PAD);
+
+  /**
+   * <p>Adds value.</p>
+   * @param pVl value
+   **/
+  public final void add(final long pVl) {
+    int idx = (int) (Thread.currentThread().getId() & (STRPS - 1));
+    this.cls.addAndGet(idx * PAD, pVl);
+  }
+
+  /**
+   * <p>Increments.</p>
+   **/
+  public final void inc() {
+    add(1L);
+  }
+
+  /**
+   * <p>Gets sum, it isn't atomic snapshot.</p>
+   * @return sum
+   **/
+  public final long sum() {
+    long rz = 0L;
+    for (int i = 0; i < STRPS; i++) {
+      rz += this.cls.get(i * PAD);
+    }
+    return rz;
+  }
+}
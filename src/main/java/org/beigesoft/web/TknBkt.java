@@ -0,0 +1,117 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.web;
+
+/**
+ * <p>Token bucket rate limiter, it isn't synchronized.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class TknBkt {
+
+  /**
+   * <p>Nanoseconds in second.</p>
+   **/
+  private static final double NSINS = 1.0e9;
+
+  /**
+   * <p>Tokens per second.</p>
+   **/
+  private final double rate;
+
+  /**
+   * <p>Capacity, i.e. max burst.</p>
+   **/
+  private final double cap;
+
+  /**
+   * <p>Available tokens.</p>
+   **/
+  private double tkns;
+
+  /**
+   * <p>Last refill time, nanoseconds.</p>
+   **/
+  private long lstTm;
+
+  /**
+   * <p>Only constructor.</p>
+   * @param pRate tokens per second
+   * @param pCap capacity, i.e. max burst
+   **/
+  public TknBkt(final double pRate, final double pCap) {
+    this.rate = pRate;
+    this.cap = pCap;
+    this.tkns = pCap;
+    this.lstTm = System.nanoTime();
+  }
+
+  /**
+   * <p>Tries to take token.</p>
+   * @param pNow current time, nanoseconds
+   * @return 0 if token is taken, otherwise nanoseconds to wait
+   **/
+  public final long take(final long pNow) {
+    if (this.rate <= 0.0) {
+      return 0L;
+    }
+    this.tkns = Math.min(this.cap,
+      this.tkns + (pNow - this.lstTm) * this.rate / NSINS);
+    this.lstTm = pNow;
+    if (this.tkns >= 1.0) {
+      this.tkns -= 1.0;
+      return 0L;
+    }
+    return Math.max(1L, (long) ((1.0 - this.tkns) * NSINS / this.rate));
+  }
+
+  /**
+   * <p>Returns unused token.</p>
+   **/
+  public final void refund() {
+    this.tkns = Math.min(this.cap, this.tkns + 1.0);
+  }
+
+  //Simple getters:
+  /**
+   * <p>Getter for rate.</p>
+   * @return double
+   **/
+  public final double getRate() {
+    return this.rate;
+  }
+
+  /**
+   * <p>Getter for cap.</p>
+   * @return double
+   **/
+  public final double getCap() {
+    return this.cap;
+  }
+}
@@ -0,0 +1,367 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.web;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import javax.mail.MessagingException;
+import javax.mail.Session;
+import javax.mail.Transport;
+
+import org.beigesoft.mdlp.EmCon;
+import org.beigesoft.mdlp.EmInt;
+import org.beigesoft.mdlp.EmStr;
+
+/**
+ * <p>Pool of connected mail transports. Session is cached per email
+ * connection (i.e. email, password's SHA-256 and properties), so plain
+ * password isn't kept in map's keys, and bounded count of
+ * idle connected transports is kept for each one, so mass mailing
+ * doesn't make TCP/TLS handshake and authentication per message.
+ * Idle transport is closed after "idlMs", and it's checked by
+ * isConnected (i.e. SMTP NOOP) if it was idle more than "chkMs".
+ * Returned transport isn't checked, so caller must close broken one
+ * instead of returning it.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class TrnsPl {
+
+  /**
+   * <p>Default max idle transports per connection.</p>
+   **/
+  public static final int MAXIDLDEF = 4;
+
+  /**
+   * <p>Default idle transport time to live, milliseconds.</p>
+   **/
+  public static final long IDLMSDEF = 60000L;
+
+  /**
+   * <p>Default idle time after that transport is checked, milliseconds.</p>
+   **/
+  public static final long CHKMSDEF = 5000L;
+
+  /**
+   * <p>Byte mask.</p>
+   **/
+  private static final int BTMSK = 0xFF;
+
+  /**
+   * <p>Sessions and idle transports by connection key.</p>
+   **/
+  private final ConcurrentMap<String, TrnsEnt> ents =
+    new ConcurrentHashMap<String, TrnsEnt>();
+
+  /**
+   * <p>Max idle transports per connection.</p>
+   **/
+  private volatile int maxIdl = MAXIDLDEF;
+
+  /**
+   * <p>Idle transport time to live, milliseconds.</p>
+   **/
+  private volatile long idlMs = IDLMSDEF;
+
+  /**
+   * <p>Idle time after that transport is checked, milliseconds.</p>
+   **/
+  private volatile long chkMs = CHKMSDEF;
+
+  /**
+   * <p>Last eviction time.</p>
+   **/
+  private volatile long evcTm = System.currentTimeMillis();
+
+  /**
+   * <p>Makes connection key.</p>
+   * @param pEmCn email connection
+   * @return key
+   **/
+  public final String key(final EmCon pEmCn) {
+    StringBuilder sb = new StringBuilder(pEmCn.getEml());
+    sb.append('\n');
+    if (pEmCn.getPwd() != null) {
+      byte[] dg;
+      try {
+        dg = MessageDigest.getInstance("SHA-256")
+          .digest(pEmCn.getPwd().getBytes(StandardCharsets.UTF_8));
+      } catch (NoSuchAlgorithmException e) {
+        throw new IllegalStateException(e);
+      }
+      for (byte bt : dg) {
+        sb.append((char) (bt & BTMSK));
+      }
+    }
+    for (Map.Entry<String, Object> ent : prps(pEmCn).entrySet()) {
+      sb.append('\n').append(ent.getKey()).append('=')
+        .append(ent.getValue());
+    }
+    return sb.toString();
+  }
+
+  /**
+   * <p>Lazy gets session.</p>
+   * @param pKey connection key
+   * @param pEmCn email connection
+   * @return session
+   **/
+  public final Session lazSes(final String pKey, final EmCon pEmCn) {
+    return lazEnt(pKey, pEmCn).sess;
+  }
+
+  /**
+   * <p>Gets idle healthy or new connected transport.</p>
+   * @param pKey connection key
+   * @param pEmCn email connection
+   * @return connected transport, it must be returned by ret
+   * @throws MessagingException if connection fails
+   **/
+  public final Transport get(final String pKey,
+    final EmCon pEmCn) throws MessagingException {
+    TrnsEnt ent = lazEnt(pKey, pEmCn);
+    long now = System.currentTimeMillis();
+    while (true) {
+      Transport tr = null;
+      long tm = 0L;
+      synchronized (ent) {
+        if (!ent.idl.isEmpty()) {
+          tr = ent.idl.pollLast();
+          tm = ent.tms.pollLast();
+        }
+      }
+      if (tr == null) {
+        break;
+      }
+      long idl = now - tm;
+      if (idl < this.idlMs && (idl < this.chkMs || tr.isConnected())) {
+        return tr;
+      }
+      cls(tr);
+    }
+    Transport tr = ent.sess.getTransport();
+    tr.connect(pEmCn.getEml(), pEmCn.getPwd());
+    return tr;
+  }
+
+  /**
+   * <p>Returns transport into pool or closes it if pool is full.
+   * Transport isn't probed here (isConnected sends NOOP), it's probed
+   * by get after "chkMs".</p>
+   * @param pKey connection key
+   * @param pTr transport that is alive, i.e. last send is done
+   * or rejected by server
+   **/
+  public final void ret(final String pKey, final Transport pTr) {
+    TrnsEnt ent = this.ents.get(pKey);
+    boolean isAdd = false;
+    long now = System.currentTimeMillis();
+    if (ent != null) {
+      synchronized (ent) {
+        if (ent.idl.size() < this.maxIdl) {
+          ent.idl.addLast(pTr);
+          ent.tms.addLast(now);
+          isAdd = true;
+        }
+      }
+    }
+    if (!isAdd) {
+      cls(pTr);
+    }
+    if (now - this.evcTm > this.idlMs) {
+      this.evcTm = now;
+      evict(now);
+    }
+  }
+
+  /**
+   * <p>Closes transport quietly.</p>
+   * @param pTr transport
+   **/
+  public final void cls(final Transport pTr) {
+    try {
+      pTr.close();
+    } catch (MessagingException e) {
+      //already broken
+    }
+  }
+
+  /**
+   * <p>Closes expired idle transports.</p>
+   * @param pNow current time
+   **/
+  public final void evict(final long pNow) {
+    for (TrnsEnt ent : this.ents.values()) {
+      while (true) {
+        Transport tr = null;
+        synchronized (ent) {
+          if (!ent.idl.isEmpty()
+            && pNow - ent.tms.peekFirst() >= this.idlMs) {
+            tr = ent.idl.pollFirst();
+            ent.tms.pollFirst();
+          }
+        }
+        if (tr == null) {
+          break;
+        }
+        cls(tr);
+      }
+    }
+  }
+
+  /**
+   * <p>Closes all idle transports and forgets sessions.</p>
+   **/
+  public final void release() {
+    evict(Long.MAX_VALUE);
+    this.ents.clear();
+  }
+
+  /**
+   * <p>Lazy gets entry.</p>
+   * @param pKey connection key
+   * @param pEmCn email connection
+   * @return entry
+   **/
+  private TrnsEnt lazEnt(final String pKey, final EmCon pEmCn) {
+    TrnsEnt ent = this.ents.get(pKey);
+    if (ent == null) {
+      Properties props = new Properties();
+      props.putAll(prps(pEmCn));
+      ent = new TrnsEnt(Session.getInstance(props));
+      TrnsEnt old = this.ents.putIfAbsent(pKey, ent);
+      if (old != null) {
+        ent = old;
+      }
+    }
+    return ent;
+  }
+
+  /**
+   * <p>Makes sorted connection properties.</p>
+   * @param pEmCn email connection
+   * @return properties
+   **/
+  private Map<String, Object> prps(final EmCon pEmCn) {
+    Map<String, Object> rz = new TreeMap<String, Object>();
+    for (EmStr esp : pEmCn.getStrPrps()) {
+      rz.put(esp.getPrNm(), esp.getPrVl());
+    }
+    for (EmInt eip : pEmCn.getIntPrps()) {
+      rz.put(eip.getPrNm(), eip.getPrVl());
+    }
+    return rz;
+  }
+
+  /**
+   * <p>Session and its idle transports.</p>
+   **/
+  private static final class TrnsEnt {
+
+    /**
+     * <p>Session.</p>
+     **/
+    private final Session sess;
+
+    /**
+     * <p>Idle transports, the last is the most recent.</p>
+     **/
+    private final ArrayDeque<Transport> idl = new ArrayDeque<Transport>();
+
+    /**
+     * <p>Idle transports return times.</p>
+     **/
+    private final ArrayDeque<Long> tms = new ArrayDeque<Long>();
+
+    /**
+     * <p>Only constructor.</p>
+     * @param pSess session
+     **/
+    TrnsEnt(final Session pSess) {
+      this.sess = pSess;
+    }
+  }
+
+  //Simple getters and setters:
+  /**
+   * <p>Getter for maxIdl.</p>
+   * @return int
+   **/
+  public final int getMaxIdl() {
+    return this.maxIdl;
+  }
+
+  /**
+   * <p>Setter for maxIdl.</p>
+   * @param pMaxIdl reference
+   **/
+  public final void setMaxIdl(final int pMaxIdl) {
+    this.maxIdl = pMaxIdl;
+  }
+
+  /**
+   * <p>Getter for idlMs.</p>
+   * @return long
+   **/
+  public final long getIdlMs() {
+    return this.idlMs;
+  }
+
+  /**
+   * <p>Setter for idlMs.</p>
+   * @param pIdlMs reference
+   **/
+  public final void setIdlMs(final long pIdlMs) {
+    this.idlMs = pIdlMs;
+  }
+
+  /**
+   * <p>Getter for chkMs.</p>
+   * @return long
+   **/
+  public final long getChkMs() {
+    return this.chkMs;
+  }
+
+  /**
+   * <p>Setter for chkMs.</p>
+   * @param pChkMs reference
+   **/
+  public final void setChkMs(final long pChkMs) {
+    this.chkMs = pChkMs;
+  }
+}
@@ -0,0 +1,164 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.web;
+
+/**
+ * <p>Uploaded file descriptor.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class UplFl {
+
+  /**
+   * <p>Form field name.</p>
+   **/
+  private String fld;
+
+  /**
+   * <p>Submitted file name.</p>
+   **/
+  private String nme;
+
+  /**
+   * <p>Content type.</p>
+   **/
+  private String cntTy;
+
+  /**
+   * <p>Size in bytes.</p>
+   **/
+  private long sz;
+
+  /**
+   * <p>Absolute path of spooled file.</p>
+   **/
+  private String pth;
+
+  /**
+   * <p>SHA-256 checksum in HEX.</p>
+   **/
+  private String chkSm;
+
+  //Simple getters and setters:
+  /**
+   * <p>Getter for fld.</p>
+   * @return String
+   **/
+  public final String getFld() {
+    return this.fld;
+  }
+
+  /**
+   * <p>Setter for fld.</p>
+   * @param pFld reference
+   **/
+  public final void setFld(final String pFld) {
+    this.fld = pFld;
+  }
+
+  /**
+   * <p>Getter for nme.</p>
+   * @return String
+   **/
+  public final String getNme() {
+    return this.nme;
+  }
+
+  /**
+   * <p>Setter for nme.</p>
+   * @param pNme reference
+   **/
+  public final void setNme(final String pNme) {
+    this.nme = pNme;
+  }
+
+  /**
+   * <p>Getter for cntTy.</p>
+   * @return String
+   **/
+  public final String getCntTy() {
+    return this.cntTy;
+  }
+
+  /**
+   * <p>Setter for cntTy.</p>
+   * @param pCntTy reference
+   **/
+  public final void setCntTy(final String pCntTy) {
+    this.cntTy = pCntTy;
+  }
+
+  /**
+   * <p>Getter for sz.</p>
+   * @return long
+   **/
+  public final long getSz() {
+    return this.sz;
+  }
+
+  /**
+   * <p>Setter for sz.</p>
+   * @param pSz reference
+   **/
+  public final void setSz(final long pSz) {
+    this.sz = pSz;
+  }
+
+  /**
+   * <p>Getter for pth.</p>
+   * @return String
+   **/
+  public final String getPth() {
+    return this.pth;
+  }
+
+  /**
+   * <p>Setter for pth.</p>
+   * @param pPth reference
+   **/
+  public final void setPth(final String pPth) {
+    this.pth = pPth;
+  }
+
+  /**
+   * <p>Getter for chkSm.</p>
+   * @return String
+   **/
+  public final String getChkSm() {
+    return this.chkSm;
+  }
+
+  /**
+   * <p>Setter for chkSm.</p>
+   * @param pChkSm reference
+   **/
+  public final void setChkSm(final String pChkSm) {
+    this.chkSm = pChkSm;
+  }
+}
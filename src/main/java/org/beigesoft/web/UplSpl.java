@@ -0,0 +1,248 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.web;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+
+import javax.servlet.http.Part;
+
+import org.beigesoft.exc.ExcCode;
+
+/**
+ * <p>Upload spooler that writes multipart file straight to file
+ * in target directory (by container's Part.write or by file channel
+ * transfer), so uploaded file isn't copied through heap buffers.
+ * It's configured by servlet init parameters "uplDir" - target
+ * directory, "uplMax" - max file size in bytes, "uplPw" - "true" to use
+ * Part.write that only renames container's temporary file on Tomcat.</p>
+ *
+ * @author Yury Demidenko
+ */
+public class UplSpl {
+
+  /**
+   * <p>Transfer portion size.</p>
+   **/
+  private static final long TRNSZ = 1024L * 1024L;
+
+  /**
+   * <p>Target directory.</p>
+   **/
+  private final File dir;
+
+  /**
+   * <p>Max file size, 0 means no limit.</p>
+   **/
+  private final long maxSz;
+
+  /**
+   * <p>Whether to use Part.write.</p>
+   **/
+  private final boolean isPw;
+
+  /**
+   * <p>Only constructor.</p>
+   * @param pDir target directory
+   * @param pMaxSz max file size, 0 means no limit
+   * @param pIsPw whether to use Part.write
+   **/
+  public UplSpl(final File pDir, final long pMaxSz, final boolean pIsPw) {
+    this.dir = pDir;
+    this.maxSz = pMaxSz;
+    this.isPw = pIsPw;
+  }
+
+  /**
+   * <p>Makes spooler by servlet init parameters.</p>
+   * @param pDir "uplDir" parameter
+   * @param pMaxSz "uplMax" parameter
+   * @param pIsPw "uplPw" parameter
+   * @return spooler or NULL if target directory isn't configured
+   * @throws Exception - an exception
+   **/
+  public static UplSpl make(final String pDir, final String pMaxSz,
+    final String pIsPw) throws Exception {
+    if (pDir == null) {
+      return null;
+    }
+    File dr = new File(pDir);
+    if (!dr.exists() && !dr.mkdirs()) {
+      throw new ExcCode(ExcCode.WRCN, "Can't create upload dir: " + pDir);
+    }
+    long msz = 0L;
+    if (pMaxSz != null) {
+      msz = Long.parseLong(pMaxSz);
+    }
+    return new UplSpl(dr, msz, Boolean.parseBoolean(pIsPw));
+  }
+
+  /**
+   * <p>Checks part size by limit.</p>
+   * @param pPart part
+   * @throws Exception - if part is too big
+   **/
+  public final void chkSz(final Part pPart) throws Exception {
+    if (this.maxSz > 0L && pPart.getSize() > this.maxSz) {
+      throw new ExcCode(ExcCode.WRPR, "upload_too_big");
+    }
+  }
+
+  /**
+   * <p>Writes part into new unique file in target directory.</p>
+   * @param pPart part
+   * @param pFlNm submitted file name
+   * @return written file
+   * @throws Exception - an exception
+   **/
+  public final File spool(final Part pPart,
+    final String pFlNm) throws Exception {
+    return spool(pPart, pFlNm, null);
+  }
+
+  /**
+   * <p>Writes part into new unique file in target directory and
+   * computes its checksum on the fly. If digest is passed, then
+   * file channel transfer is used regardless of "uplPw".</p>
+   * @param pPart part
+   * @param pFlNm submitted file name
+   * @param pMd message digest or NULL
+   * @return written file
+   * @throws Exception - an exception
+   **/
+  public final File spool(final Part pPart, final String pFlNm,
+    final MessageDigest pMd) throws Exception {
+    chkSz(pPart);
+    String ext = "";
+    int dotIdx = pFlNm.lastIndexOf('.');
+    if (dotIdx > 0) {
+      ext = pFlNm.substring(dotIdx).replaceAll("[^A-Za-z0-9.]", "");
+    }
+    File fl = File.createTempFile("upl", ext, this.dir);
+    boolean isOk = false;
+    try {
+      if (this.isPw && pMd == null) {
+        if (!fl.delete()) {
+          throw new ExcCode(ExcCode.WR, "Can't replace file: " + fl);
+        }
+        pPart.write(fl.getAbsolutePath());
+      } else {
+        trnsf(pPart, fl, pMd);
+      }
+      isOk = true;
+    } finally {
+      if (!isOk && fl.exists() && !fl.delete()) {
+        fl.deleteOnExit();
+      }
+    }
+    return fl;
+  }
+
+  /**
+   * <p>Transfers part into file with file channel.</p>
+   * @param pPart part
+   * @param pFl file
+   * @param pMd message digest or NULL
+   * @throws Exception - an exception
+   **/
+  private void trnsf(final Part pPart, final File pFl,
+    final MessageDigest pMd) throws Exception {
+    InputStream is = null;
+    FileOutputStream fos = null;
+    try {
+      is = pPart.getInputStream();
+      if (pMd != null) {
+        is = new DigestInputStream(is, pMd);
+      }
+      fos = new FileOutputStream(pFl);
+      ReadableByteChannel src = Channels.newChannel(is);
+      FileChannel fc = fos.getChannel();
+      long pos = 0L;
+      long cnt;
+      while ((cnt = fc.transferFrom(src, pos, TRNSZ)) > 0L) {
+        pos += cnt;
+        if (this.maxSz > 0L && pos > this.maxSz) {
+          throw new ExcCode(ExcCode.WRPR, "upload_too_big");
+        }
+      }
+    } finally {
+      if (is != null) {
+        is.close();
+      }
+      if (fos != null) {
+        fos.close();
+      }
+    }
+  }
+
+  /**
+   * <p>Retrieves submitted file name from part.</p>
+   * @param pPart part
+   * @return file name or NULL if it's not file part
+   **/
+  public static String flNm(final Part pPart) {
+    String cds = pPart.getHeader("content-disposition");
+    if (cds == null) {
+      return null;
+    }
+    for (String cd : cds.split(";")) {
+      if (cd.trim().startsWith("filename")) {
+        String fn = cd.substring(cd.indexOf('=') + 1).trim()
+          .replace("\"", "");
+        //MSIE sends full path:
+        int slIdx = Math.max(fn.lastIndexOf('/'), fn.lastIndexOf('\\'));
+        return fn.substring(slIdx + 1);
+      }
+    }
+    return null;
+  }
+
+  //Simple getters:
+  /**
+   * <p>Getter for dir.</p>
+   * @return File
+   **/
+  public final File getDir() {
+    return this.dir;
+  }
+
+  /**
+   * <p>Getter for maxSz.</p>
+   * @return long
+   **/
+  public final long getMaxSz() {
+    return this.maxSz;
+  }
+}
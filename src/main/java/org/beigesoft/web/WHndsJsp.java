@@ -28,9 +28,9 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package org.beigesoft.web;
 
-import java.util.List;
-import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.io.IOException;
 
 import javax.servlet.ServletException;
@@ -52,12 +52,14 @@ import org.beigesoft.rdb.IOrm;
  * (by web.xml), it maybe overridden by invoker JSP name or by any handler.
  * Any handler may also requests servlet redirection.
  * WEB-CRUD uses AJAX-HTML5-FormData that makes multi-part POST request,
- * so it should be configured with "multipart-config".</p>
+ * so it should be configured with "multipart-config".
+ * With init parameter "async"="true" (and "async-supported" in web.xml)
+ * handlers chain and JSP include are done on handlers executor.</p>
  *
  * @author Yury Demidenko
  */
 @SuppressWarnings("serial")
-public class WHndsJsp extends HttpServlet {
+public class WHndsJsp extends HttpServlet implements IWrkRq {
 
   /**
    * <p>App beans factory.</p>
@@ -76,39 +78,120 @@ public class WHndsJsp extends HttpServlet {
   private String logNm;
 
   /**
-   * <p>Request handlers names.</p>
+   * <p>Metrics, maybe NULL.</p>
    **/
-  private final List<String> hndNms = new ArrayList<String>();
+  private Mtrcs mtrcs;
+
+  /**
+   * <p>Redirects counter.</p>
+   **/
+  private AtomicLong rdrCnt;
+
+  /**
+   * <p>Request handlers chain.</p>
+   **/
+  private HndChn<IHndRq> hndChn;
+
+  /**
+   * <p>Handlers executor if servlet is in asynchronous mode,
+   * i.e. init parameter "async" is "true".</p>
+   **/
+  private HldExr hldExr;
 
   /**
    * <p>Default JSP name without extension (.jsp).</p>
    **/
   private String defJsp;
 
+  /**
+   * <p>JSP dispatchers by view name.</p>
+   **/
+  private JspDsps jspDsps;
+
+  /**
+   * <p>Request attributes to publish for JSP, NULL means all.</p>
+   **/
+  private Set<String> attrsExp;
+
+  /**
+   * <p>Request limits, maybe NULL.</p>
+   **/
+  private RqLmt rqLmt;
+
+  /**
+   * <p>Rejected by limits requests counter.</p>
+   **/
+  private AtomicLong rjcCnt;
+
   @Override
   public final void init() throws ServletException {
+    this.attrsExp = HttpReqDt.mkAttrsExp(getInitParameter("attrsExp"));
     this.dirJsp = getInitParameter("dirJsp");
     this.defJsp = getInitParameter("defJsp");
+    this.jspDsps = new JspDsps(getServletContext(), this.dirJsp);
     this.logNm = getInitParameter("logNm");
-    String hndNmsStr = getInitParameter("hndNms");
-    for (String hn : hndNmsStr.split(",")) {
-      this.hndNms.add(hn);
+    this.hndChn = new HndChn<IHndRq>(IHndRq.class,
+      getInitParameter("hndNms"));
+    this.hndChn.reg(getServletContext(), getServletName());
+    if (Boolean.parseBoolean(getInitParameter("async"))) {
+      this.hldExr = (HldExr) getServletContext().getAttribute(HldExr.CTXATTR);
+    }
+    this.mtrcs = (Mtrcs) getServletContext().getAttribute(Mtrcs.CTXATTR);
+    this.rqLmt = RqLmt.make(getInitParameter("maxBdSz"),
+      getInitParameter("maxPrmCnt"), getInitParameter("maxPrmLen"));
+    if (this.mtrcs != null) {
+      this.rdrCnt = this.mtrcs.lazRdr(getServletName());
+      this.rjcCnt = this.mtrcs.lazRjc(getServletName());
+    } else {
+      this.rdrCnt = new AtomicLong();
+      this.rjcCnt = new AtomicLong();
     }
     this.fctApp = (IFctApp) getServletContext().getAttribute("IFctApp");
   }
 
+  @Override
+  public final void destroy() {
+    this.hndChn.unreg(getServletContext());
+  }
+
   @Override
   public final void doGet(final HttpServletRequest pReq,
     final HttpServletResponse pResp) throws ServletException, IOException {
-    doWork(pReq, pResp);
+    dspch(pReq, pResp);
   }
 
   @Override
   public final void doPost(final HttpServletRequest pReq,
     final HttpServletResponse pResp) throws ServletException, IOException {
-    doWork(pReq, pResp);
+    dspch(pReq, pResp);
   }
 
+  /**
+   * <p>Rejects request that exceeds limits, then does work either
+   * on handlers executor in asynchronous mode or on container thread.</p>
+   * @param pReq Http Servlet Request
+   * @param pResp Http Servlet Response
+   * @throws ServletException ServletException
+   * @throws IOException IOException
+   **/
+  public final void dspch(final HttpServletRequest pReq,
+    final HttpServletResponse pResp) throws ServletException, IOException {
+    if (this.rqLmt != null) {
+      //before parameters parsing:
+      pReq.setCharacterEncoding("UTF-8");
+      int sts = this.rqLmt.chk(pReq);
+      if (sts != 0) {
+        this.rjcCnt.incrementAndGet();
+        pResp.sendError(sts);
+        return;
+      }
+    }
+    if (this.hldExr != null && pReq.isAsyncSupported()) {
+      this.hldExr.dspch(pReq, pResp, this);
+    } else {
+      doWork(pReq, pResp);
+    }
+  }
 
   /**
    * <p>Generic request handler.</p>
@@ -117,22 +200,33 @@ public class WHndsJsp extends HttpServlet {
    * @throws ServletException ServletException
    * @throws IOException IOException
    **/
+  @Override
   public final void doWork(final HttpServletRequest pReq,
     final HttpServletResponse pResp) throws ServletException, IOException {
     HashMap<String, Object> rqVs = new HashMap<String, Object>();
     pReq.setCharacterEncoding("UTF-8");
     pResp.setCharacterEncoding("UTF-8");
+    HttpReqDt rqDt = null;
     try {
-      HttpReqDt rqDt = new HttpReqDt(pReq, pResp);
+      rqDt = new HttpReqDt(pReq, pResp, this.attrsExp);
       rqDt.setAttr("rvs", rqVs);
       rqVs.put("rqDt", rqDt);
-      for (String hn : this.hndNms) {
-        IHndRq hnd = (IHndRq) this.fctApp.laz(rqVs, hn);
-        hnd.handle(rqVs, rqDt);
+      IHndRq[] hnds = this.hndChn.lazHnds(rqVs, this.fctApp);
+      Hstg[] hstgs = this.hndChn.getHstgs();
+      for (int i = 0; i < hnds.length; i++) {
+        long stm = System.nanoTime();
+        try {
+          hnds[i].handle(rqVs, rqDt);
+        } finally {
+          //failed (e.g. timed out) handler is counted too:
+          hstgs[i].add(System.nanoTime() - stm);
+        }
         //any handler can set redirect servlet, e.g. first handler spam redir:
         String srvlRd = (String) rqDt.getAttr("srvlRd");
         if (srvlRd != null) {
+          this.rdrCnt.incrementAndGet();
           rqDt.remAttr("srvlRd");
+          rqDt.flsCooks();
           pResp.sendRedirect(pReq.getContextPath() + srvlRd);
         }
       }
@@ -143,10 +237,13 @@ public class WHndsJsp extends HttpServlet {
       if (rnd == null) {
         rnd = this.defJsp;
       }
-      String path = dirJsp + rnd + ".jsp";
-      RequestDispatcher rd = getServletContext().getRequestDispatcher(path);
+      RequestDispatcher rd = this.jspDsps.get(rnd);
+      rqDt.flsCooks();
       rd.include(pReq, pResp);
     } catch (Exception e) {
+      if (this.mtrcs != null) {
+        this.mtrcs.err(e);
+      }
       if (this.fctApp != null) {
         ILog logger = null;
         try {
@@ -180,6 +277,10 @@ public class WHndsJsp extends HttpServlet {
         pReq.getRequestURI());
       pReq.setAttribute("javax.servlet.error.servlet_name", getClass()
         .getCanonicalName());
+      if (rqDt != null) {
+        //handler may set cookie before failure, e.g. language:
+        rqDt.flsCooks();
+      }
       pResp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
     }
   }
@@ -0,0 +1,74 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.web;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * <p>Servlet that exposes front servlets metrics in Prometheus text format.
+ * It should be protected by web.xml security constraint.</p>
+ *
+ * @author Yury Demidenko
+ */
+@SuppressWarnings("serial")
+public class WMetrics extends HttpServlet {
+
+  /**
+   * <p>Metrics.</p>
+   **/
+  private Mtrcs mtrcs;
+
+  @Override
+  public final void init() throws ServletException {
+    this.mtrcs = (Mtrcs) getServletContext().getAttribute(Mtrcs.CTXATTR);
+  }
+
+  @Override
+  public final void doGet(final HttpServletRequest pReq,
+    final HttpServletResponse pResp) throws ServletException, IOException {
+    if (this.mtrcs == null) {
+      pResp.sendError(HttpServletResponse.SC_NOT_FOUND);
+      return;
+    }
+    pResp.setCharacterEncoding("UTF-8");
+    pResp.setContentType("text/plain; version=0.0.4; charset=UTF-8");
+    PrintWriter wri = pResp.getWriter();
+    try {
+      this.mtrcs.write(wri);
+    } finally {
+      wri.close();
+    }
+  }
+}
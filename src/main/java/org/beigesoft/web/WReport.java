@@ -28,9 +28,9 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package org.beigesoft.web;
 
-import java.util.List;
-import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.io.IOException;
 import java.io.OutputStream;
 
@@ -48,11 +48,16 @@ import org.beigesoft.rdb.IOrm;
 
 /**
  * <p>Generic servlet that passes response output stream to file reporter
- * request handler. It's for PDF, CSV, etc. responces.</p>
+ * request handler. It's for PDF, CSV, etc. responces.
+ * Handler writes into managed report stream with bounded buffer and
+ * periodic flushing, it stops on client's disconnect.
+ * Response maybe compressed for content types from "cmprTys".
+ * With init parameter "async"="true" (and "async-supported" in web.xml)
+ * the work is done on handlers executor.</p>
  * @author Yury Demidenko
  */
 @SuppressWarnings("serial")
-public class WReport extends HttpServlet {
+public class WReport extends HttpServlet implements IWrkRq {
 
   /**
    * <p>App beans factory.</p>
@@ -64,6 +69,22 @@ public class WReport extends HttpServlet {
    **/
   private String logNm;
 
+  /**
+   * <p>Metrics, maybe NULL.</p>
+   **/
+  private Mtrcs mtrcs;
+
+  /**
+   * <p>Redirects counter.</p>
+   **/
+  private AtomicLong rdrCnt;
+
+  /**
+   * <p>Response compressor, NULL if it isn't configured
+   * by init parameter "cmprTys".</p>
+   **/
+  private Cmprs cmprs;
+
   /**
    * <p>Content type, e.g. "text/csv".</p>
    **/
@@ -75,42 +96,140 @@ public class WReport extends HttpServlet {
   private String fileEx;
 
   /**
-   * <p>File reporter handler name.</p>
+   * <p>Report buffer size, init parameter "bufSz".</p>
+   **/
+  private int bufSz = RpOus.BUFSZDEF;
+
+  /**
+   * <p>Report flush period in bytes, init parameter "flsSz".</p>
    **/
-  private String hndNm;
+  private long flsSz = RpOus.FLSSZDEF;
 
   /**
-   * <p>Request basic first handlers names.</p>
+   * <p>Report flush period in milliseconds, init parameter "flsMs".</p>
    **/
-  private final List<String> hndNms = new ArrayList<String>();
+  private long flsMs = RpOus.FLSMSDEF;
+
+  /**
+   * <p>File reporter handler (chain of one).</p>
+   **/
+  private HndChn<IHndFlRpRq> hndFlChn;
+
+  /**
+   * <p>Request basic first handlers chain.</p>
+   **/
+  private HndChn<IHndRq> hndChn;
+
+  /**
+   * <p>Handlers executor if servlet is in asynchronous mode,
+   * i.e. init parameter "async" is "true".</p>
+   **/
+  private HldExr hldExr;
+
+  /**
+   * <p>Request attributes to publish for JSP, NULL means all.</p>
+   **/
+  private Set<String> attrsExp;
+
+  /**
+   * <p>Request limits, maybe NULL.</p>
+   **/
+  private RqLmt rqLmt;
+
+  /**
+   * <p>Rejected by limits requests counter.</p>
+   **/
+  private AtomicLong rjcCnt;
 
   @Override
   public final void init() throws ServletException {
-    this.hndNm = getInitParameter("hndNm");
+    this.attrsExp = HttpReqDt.mkAttrsExp(getInitParameter("attrsExp"));
     this.logNm = getInitParameter("logNm");
     this.contTy = getInitParameter("contTy");
+    this.cmprs = Cmprs.make(getInitParameter("cmprTys"),
+      getInitParameter("cmprMin"));
     this.fileEx = getInitParameter("fileEx");
-    String hndNmsStr = getInitParameter("hndNms");
-    if (hndNmsStr != null) {
-      for (String hn : hndNmsStr.split(",")) {
-        this.hndNms.add(hn);
-      }
+    String prm = getInitParameter("bufSz");
+    if (prm != null) {
+      this.bufSz = Integer.parseInt(prm);
+    }
+    prm = getInitParameter("flsSz");
+    if (prm != null) {
+      this.flsSz = Long.parseLong(prm);
+    }
+    prm = getInitParameter("flsMs");
+    if (prm != null) {
+      this.flsMs = Long.parseLong(prm);
+    }
+    this.hndChn = new HndChn<IHndRq>(IHndRq.class,
+      getInitParameter("hndNms"));
+    this.hndChn.reg(getServletContext(), getServletName());
+    this.hndFlChn = new HndChn<IHndFlRpRq>(IHndFlRpRq.class,
+      getInitParameter("hndNm"));
+    this.hndFlChn.reg(getServletContext(), getServletName());
+    if (Boolean.parseBoolean(getInitParameter("async"))) {
+      this.hldExr = (HldExr) getServletContext().getAttribute(HldExr.CTXATTR);
+    }
+    this.mtrcs = (Mtrcs) getServletContext().getAttribute(Mtrcs.CTXATTR);
+    this.rqLmt = RqLmt.make(getInitParameter("maxBdSz"),
+      getInitParameter("maxPrmCnt"), getInitParameter("maxPrmLen"));
+    if (this.mtrcs != null) {
+      this.rdrCnt = this.mtrcs.lazRdr(getServletName());
+      this.rjcCnt = this.mtrcs.lazRjc(getServletName());
+    } else {
+      this.rdrCnt = new AtomicLong();
+      this.rjcCnt = new AtomicLong();
     }
     this.fctApp = (IFctApp) getServletContext().getAttribute("IFctApp");
   }
 
+  @Override
+  public final void destroy() {
+    if (this.cmprs != null) {
+      this.cmprs.release();
+    }
+    this.hndChn.unreg(getServletContext());
+    this.hndFlChn.unreg(getServletContext());
+  }
+
   @Override
   public final void doGet(final HttpServletRequest pReq,
     final HttpServletResponse pResp) throws ServletException, IOException {
-    doWork(pReq, pResp);
+    dspch(pReq, pResp);
   }
 
   @Override
   public final void doPost(final HttpServletRequest pReq,
     final HttpServletResponse pResp) throws ServletException, IOException {
-    doWork(pReq, pResp);
+    dspch(pReq, pResp);
   }
 
+  /**
+   * <p>Rejects request that exceeds limits, then does work either
+   * on handlers executor in asynchronous mode or on container thread.</p>
+   * @param pReq Http Servlet Request
+   * @param pResp Http Servlet Response
+   * @throws ServletException ServletException
+   * @throws IOException IOException
+   **/
+  public final void dspch(final HttpServletRequest pReq,
+    final HttpServletResponse pResp) throws ServletException, IOException {
+    if (this.rqLmt != null) {
+      //before parameters parsing:
+      pReq.setCharacterEncoding("UTF-8");
+      int sts = this.rqLmt.chk(pReq);
+      if (sts != 0) {
+        this.rjcCnt.incrementAndGet();
+        pResp.sendError(sts);
+        return;
+      }
+    }
+    if (this.hldExr != null && pReq.isAsyncSupported()) {
+      this.hldExr.dspch(pReq, pResp, this);
+    } else {
+      doWork(pReq, pResp);
+    }
+  }
 
   /**
    * <p>Generic request handler.</p>
@@ -119,6 +238,7 @@ public class WReport extends HttpServlet {
    * @throws ServletException ServletException
    * @throws IOException IOException
    **/
+  @Override
   public final void doWork(final HttpServletRequest pReq,
     final HttpServletResponse pResp) throws ServletException, IOException {
     HashMap<String, Object> rqVs = new HashMap<String, Object>();
@@ -133,31 +253,75 @@ public class WReport extends HttpServlet {
       pResp.setHeader("Content-Disposition", "attachment; filename="
         + fileNm + "." + this.fileEx);
     }
-    OutputStream htmOus = null;
+    pResp.setBufferSize(this.bufSz);
+    RpOus htmOus = null;
+    OutputStream cmOus = null;
+    HttpReqDt rqDt = null;
     try {
-      HttpReqDt rqDt = new HttpReqDt(pReq, pResp);
+      rqDt = new HttpReqDt(pReq, pResp, this.attrsExp);
       rqDt.setAttr("rvs", rqVs);
       rqVs.put("rqDt", rqDt);
-      for (String hn : this.hndNms) {
-        IHndRq hnd = (IHndRq) this.fctApp.laz(rqVs, hn);
-        hnd.handle(rqVs, rqDt);
+      IHndRq[] hnds = this.hndChn.lazHnds(rqVs, this.fctApp);
+      Hstg[] hstgs = this.hndChn.getHstgs();
+      for (int i = 0; i < hnds.length; i++) {
+        long stm = System.nanoTime();
+        try {
+          hnds[i].handle(rqVs, rqDt);
+        } finally {
+          //failed (e.g. timed out) handler is counted too:
+          hstgs[i].add(System.nanoTime() - stm);
+        }
         //any handler can set redirect servlet, e.g. first handler spam redir:
         String srvlRd = (String) rqDt.getAttr("srvlRd");
         if (srvlRd != null) {
+          this.rdrCnt.incrementAndGet();
           rqDt.remAttr("srvlRd");
+          rqDt.flsCooks();
           pResp.sendRedirect(pReq.getContextPath() + srvlRd);
         }
       }
-      htmOus = pResp.getOutputStream();
-      IHndFlRpRq hnd = (IHndFlRpRq) this.fctApp.laz(rqVs, this.hndNm);
-      hnd.handle(rqVs, rqDt, htmOus);
+      if (this.cmprs != null) {
+        cmOus = this.cmprs.wrap(pReq, pResp, this.contTy);
+      }
+      if (cmOus != null) {
+        htmOus = new RpOus(cmOus, this.bufSz, this.flsSz, this.flsMs);
+      } else {
+        htmOus = new RpOus(pResp.getOutputStream(), this.bufSz, this.flsSz,
+          this.flsMs);
+      }
+      //report handler writes response, so cookies can't wait:
+      rqDt.setIsCkImd(true);
+      IHndFlRpRq hnd = this.hndFlChn.lazHnds(rqVs, this.fctApp)[0];
+      long stm = System.nanoTime();
+      try {
+        hnd.handle(rqVs, rqDt, htmOus);
+      } finally {
+        this.hndFlChn.getHstgs()[0].add(System.nanoTime() - stm);
+      }
       //any handler can set redirect servlet, e.g. first handler spam redir:
       String srvlRd = (String) rqDt.getAttr("srvlRd");
       if (srvlRd != null) {
+        this.rdrCnt.incrementAndGet();
         rqDt.remAttr("srvlRd");
         pResp.sendRedirect(pReq.getContextPath() + srvlRd);
       }
     } catch (Exception e) {
+      if (htmOus != null && htmOus.getIsAbrt()) {
+        //client has disconnected, report generator has been stopped:
+        if (this.fctApp != null) {
+          try {
+            ILog logger = (ILog) this.fctApp.laz(rqVs, this.logNm);
+            logger.info(rqVs, getClass(), "Client has disconnected, sent: "
+              + htmOus.getTot());
+          } catch (Exception e1) {
+            e1.printStackTrace();
+          }
+        }
+        return;
+      }
+      if (this.mtrcs != null) {
+        this.mtrcs.err(e);
+      }
       if (this.fctApp != null) {
         ILog logger = null;
         try {
@@ -191,6 +355,13 @@ public class WReport extends HttpServlet {
         pReq.getRequestURI());
       pReq.setAttribute("javax.servlet.error.servlet_name", getClass()
         .getCanonicalName());
+      if (cmOus != null && !pResp.isCommitted()) {
+        pResp.reset(); //clear content encoding header
+      }
+      if (rqDt != null) {
+        //handler may set cookie before failure, e.g. language:
+        rqDt.flsCooks();
+      }
       pResp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
     } finally {
       if (htmOus != null) {
@@ -0,0 +1,705 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.web;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.RequestDispatcher;
+
+import org.beigesoft.exc.ExcCode;
+import org.beigesoft.fct.IFctApp;
+import org.beigesoft.log.ILog;
+import org.beigesoft.hnd.IHndRq;
+import org.beigesoft.rdb.IOrm;
+
+/**
+ * <p>Generic servlet for resumable chunked uploading of big file,
+ * e.g. database backup over unreliable link. Every request has
+ * parameter "uplId" - client's upload ID (letters, digits, "_", "-").
+ * Upload belongs to its owner, i.e. authenticated user or session
+ * for anonymous one (client must keep session cookie), upload's
+ * directory name is SHA-256 of owner and ID, so other client can't
+ * read, write or commit it by the same ID.
+ * Protocol:
+ * <ul>
+ * <li>POST with parameters "chkIdx" - chunk index, "chkOfs" - chunk offset,
+ * and chunk's bytes as body with content type "application/octet-stream"
+ * - chunk is written at its offset into upload's data file, then it's
+ * recorded in upload's manifest. Chunk may be resent.</li>
+ * <li>GET - returns received chunks as text lines "index;offset;length",
+ * so client resumes from the first missing one.</li>
+ * <li>POST with parameters "cmt", "uplTot" - total size and "flNm" - file
+ * name - checks that chunks cover whole file, then passes "fileUplPth",
+ * "fileUplSz" and "fileUplNm" into request attributes and invokes
+ * handlers chain like WUplSng. Handler should move that file.
+ * Upload's chunks are deleted only after handlers chain is done,
+ * so if it's failed, then client can commit upload again.</li>
+ * </ul>
+ * Init parameters: "uplDir" - directory (container's temporary one
+ * by default), "uplMax" - max file size (2GB by default, 0 means
+ * no limit), "chkMax" - max chunk size, "uplsMax" - max unfinished
+ * uploads, "uplTtl" - hours after that unfinished upload is deleted,
+ * it's checked on start and then hourly.</p>
+ *
+ * @author Yury Demidenko
+ */
+@SuppressWarnings("serial")
+public class WUplChk extends HttpServlet {
+
+  /**
+   * <p>Default max chunk size.</p>
+   **/
+  public static final long CHKMAXDEF = 8L * 1024L * 1024L;
+
+  /**
+   * <p>Default unfinished upload time to live, hours.</p>
+   **/
+  public static final long UPLTTLDEF = 48L;
+
+  /**
+   * <p>Default max file size.</p>
+   **/
+  public static final long UPLMAXDEF = 2L * 1024L * 1024L * 1024L;
+
+  /**
+   * <p>Default max unfinished uploads.</p>
+   **/
+  public static final int UPLSMAXDEF = 100;
+
+  /**
+   * <p>Manifest file name.</p>
+   **/
+  private static final String MNF = "mnf";
+
+  /**
+   * <p>Data file name.</p>
+   **/
+  private static final String DAT = "dat";
+
+  /**
+   * <p>Upload ID pattern.</p>
+   **/
+  private static final Pattern UPLID = Pattern.compile("[A-Za-z0-9_-]{1,64}");
+
+  /**
+   * <p>Locks stripes count, power of 2.</p>
+   **/
+  private static final int LCKS = 64;
+
+  /**
+   * <p>Milliseconds in hour.</p>
+   **/
+  private static final long HRMS = 3600000L;
+
+  /**
+   * <p>HEX digits.</p>
+   **/
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  /**
+   * <p>Half-byte mask.</p>
+   **/
+  private static final int HBMSK = 0x0f;
+
+  /**
+   * <p>Half-byte bits.</p>
+   **/
+  private static final int HBBTS = 4;
+
+  /**
+   * <p>Manifest locks stripes.</p>
+   **/
+  private final Object[] lcks = new Object[LCKS];
+
+  /**
+   * <p>Upload's directory creation lock.</p>
+   **/
+  private final Object crLck = new Object();
+
+  /**
+   * <p>Last stale uploads sweep time.</p>
+   **/
+  private final AtomicLong swpAt = new AtomicLong();
+
+  /**
+   * <p>App beans factory.</p>
+   **/
+  private IFctApp fctApp;
+
+  /**
+   * <p>Folder for redirected JSP, e.g. "JSP WEB-INF/jsp/".
+   * Settled through init params.</p>
+   **/
+  private String dirJsp;
+
+  /**
+   * <p>Logger name.</p>
+   **/
+  private String logNm;
+
+  /**
+   * <p>Metrics, maybe NULL.</p>
+   **/
+  private Mtrcs mtrcs;
+
+  /**
+   * <p>Redirects counter.</p>
+   **/
+  private AtomicLong rdrCnt;
+
+  /**
+   * <p>Request handlers chain.</p>
+   **/
+  private HndChn<IHndRq> hndChn;
+
+  /**
+   * <p>Default JSP name without extension (.jsp).</p>
+   **/
+  private String defJsp;
+
+  /**
+   * <p>JSP dispatchers by view name.</p>
+   **/
+  private JspDsps jspDsps;
+
+  /**
+   * <p>Uploads directory.</p>
+   **/
+  private File uplDir;
+
+  /**
+   * <p>Max file size, 0 means no limit.</p>
+   **/
+  private long uplMax;
+
+  /**
+   * <p>Max unfinished uploads, 0 means no limit.</p>
+   **/
+  private int uplsMax;
+
+  /**
+   * <p>Unfinished upload time to live, milliseconds.</p>
+   **/
+  private long uplTtl;
+
+  /**
+   * <p>Max chunk size.</p>
+   **/
+  private long chkMax;
+
+  /**
+   * <p>Request attributes to publish for JSP, NULL means all.</p>
+   **/
+  private Set<String> attrsExp;
+
+  @Override
+  public final void init() throws ServletException {
+    this.attrsExp = HttpReqDt.mkAttrsExp(getInitParameter("attrsExp"));
+    this.dirJsp = getInitParameter("dirJsp");
+    this.defJsp = getInitParameter("defJsp");
+    this.jspDsps = new JspDsps(getServletContext(), this.dirJsp);
+    this.logNm = getInitParameter("logNm");
+    String prm = getInitParameter("uplDir");
+    if (prm == null) {
+      File tmpDir = (File) getServletContext()
+        .getAttribute("javax.servlet.context.tempdir");
+      this.uplDir = new File(tmpDir, "uplchk");
+    } else {
+      this.uplDir = new File(prm);
+    }
+    if (!this.uplDir.exists() && !this.uplDir.mkdirs()) {
+      throw new ServletException("Can't create upload dir: " + this.uplDir);
+    }
+    prm = getInitParameter("uplMax");
+    if (prm == null) {
+      this.uplMax = UPLMAXDEF;
+    } else {
+      this.uplMax = Long.parseLong(prm);
+    }
+    prm = getInitParameter("uplsMax");
+    if (prm == null) {
+      this.uplsMax = UPLSMAXDEF;
+    } else {
+      this.uplsMax = Integer.parseInt(prm);
+    }
+    prm = getInitParameter("chkMax");
+    if (prm == null) {
+      this.chkMax = CHKMAXDEF;
+    } else {
+      this.chkMax = Long.parseLong(prm);
+    }
+    long ttl = UPLTTLDEF;
+    prm = getInitParameter("uplTtl");
+    if (prm != null) {
+      ttl = Long.parseLong(prm);
+    }
+    this.uplTtl = ttl * HRMS;
+    for (int i = 0; i < LCKS; i++) {
+      this.lcks[i] = new Object();
+    }
+    this.swpAt.set(System.currentTimeMillis());
+    delStale(this.uplTtl);
+    this.hndChn = new HndChn<IHndRq>(IHndRq.class,
+      getInitParameter("hndNms"));
+    this.hndChn.reg(getServletContext(), getServletName());
+    this.mtrcs = (Mtrcs) getServletContext().getAttribute(Mtrcs.CTXATTR);
+    if (this.mtrcs != null) {
+      this.rdrCnt = this.mtrcs.lazRdr(getServletName());
+    } else {
+      this.rdrCnt = new AtomicLong();
+    }
+    this.fctApp = (IFctApp) getServletContext().getAttribute("IFctApp");
+  }
+
+  @Override
+  public final void destroy() {
+    this.hndChn.unreg(getServletContext());
+  }
+
+  @Override
+  public final void doGet(final HttpServletRequest pReq,
+    final HttpServletResponse pResp) throws ServletException, IOException {
+    File dir = uplDir(pReq);
+    if (dir == null) {
+      pResp.sendError(HttpServletResponse.SC_BAD_REQUEST);
+      return;
+    }
+    pResp.setContentType("text/plain");
+    pResp.setCharacterEncoding("UTF-8");
+    pResp.setHeader("Cache-Control", "no-store");
+    PrintWriter wri = pResp.getWriter();
+    synchronized (lck(dir)) {
+      for (long[] chk : rdMnf(dir).values()) {
+        wri.println(chk[0] + ";" + chk[1] + ";" + chk[2]);
+      }
+    }
+    wri.flush();
+  }
+
+  @Override
+  public final void doPost(final HttpServletRequest pReq,
+    final HttpServletResponse pResp) throws ServletException, IOException {
+    if (pReq.getParameter("cmt") != null) {
+      doWork(pReq, pResp);
+    } else {
+      wrChk(pReq, pResp);
+    }
+  }
+
+  /**
+   * <p>Writes chunk at its offset and records it in manifest.</p>
+   * @param pReq Http Servlet Request
+   * @param pResp Http Servlet Response
+   * @throws IOException IOException
+   **/
+  public final void wrChk(final HttpServletRequest pReq,
+    final HttpServletResponse pResp) throws IOException {
+    File dir = uplDir(pReq);
+    long idx;
+    long ofs;
+    try {
+      idx = Long.parseLong(pReq.getParameter("chkIdx"));
+      ofs = Long.parseLong(pReq.getParameter("chkOfs"));
+    } catch (NumberFormatException e) {
+      idx = -1L;
+      ofs = -1L;
+    }
+    if (dir == null || idx < 0L || ofs < 0L) {
+      pResp.sendError(HttpServletResponse.SC_BAD_REQUEST);
+      return;
+    }
+    long len = pReq.getContentLengthLong();
+    if (len < 0L) {
+      pResp.sendError(HttpServletResponse.SC_LENGTH_REQUIRED);
+      return;
+    }
+    if (len > this.chkMax || this.uplMax > 0L && ofs + len > this.uplMax) {
+      pResp.sendError(HttpServletResponse.SC_REQUEST_ENTITY_TOO_LARGE);
+      return;
+    }
+    if (!dir.exists()) {
+      swp();
+      if (!mkDir(dir)) {
+        pResp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        return;
+      }
+    }
+    RandomAccessFile raf = new RandomAccessFile(new File(dir, DAT), "rw");
+    long wrt = 0L;
+    try {
+      FileChannel fc = raf.getChannel();
+      ReadableByteChannel src = Channels.newChannel(pReq.getInputStream());
+      long cnt;
+      while (wrt < len
+        && (cnt = fc.transferFrom(src, ofs + wrt, len - wrt)) > 0L) {
+        wrt += cnt;
+      }
+      fc.force(false);
+    } finally {
+      raf.close();
+    }
+    if (wrt != len) {
+      pResp.sendError(HttpServletResponse.SC_BAD_REQUEST);
+      return;
+    }
+    synchronized (lck(dir)) {
+      FileOutputStream fos = new FileOutputStream(new File(dir, MNF), true);
+      try {
+        fos.write((idx + ";" + ofs + ";" + len + "\n").getBytes("UTF-8"));
+        fos.getFD().sync();
+      } finally {
+        fos.close();
+      }
+    }
+    pResp.setStatus(HttpServletResponse.SC_NO_CONTENT);
+  }
+
+  /**
+   * <p>Commits upload and invokes handlers chain.</p>
+   * @param pReq Http Servlet Request
+   * @param pResp Http Servlet Response
+   * @throws ServletException ServletException
+   * @throws IOException IOException
+   **/
+  public final void doWork(final HttpServletRequest pReq,
+    final HttpServletResponse pResp) throws ServletException, IOException {
+    HashMap<String, Object> rqVs = new HashMap<String, Object>();
+    pReq.setCharacterEncoding("UTF-8");
+    pResp.setCharacterEncoding("UTF-8");
+    HttpReqDt rqDt = null;
+    try {
+      rqDt = new HttpReqDt(pReq, pResp, this.attrsExp);
+      rqDt.setAttr("rvs", rqVs);
+      rqVs.put("rqDt", rqDt);
+      String flNm = pReq.getParameter("flNm");
+      File dir = uplDir(pReq);
+      File fl = cmt(dir, pReq.getParameter("uplTot"), flNm);
+      rqDt.setAttr("fileUplPth", fl.getAbsolutePath());
+      rqDt.setAttr("fileUplSz", fl.length());
+      rqDt.setAttr("fileUplNm", flNm);
+      IHndRq[] hnds = this.hndChn.lazHnds(rqVs, this.fctApp);
+      Hstg[] hstgs = this.hndChn.getHstgs();
+      for (int i = 0; i < hnds.length; i++) {
+        long stm = System.nanoTime();
+        try {
+          hnds[i].handle(rqVs, rqDt);
+        } finally {
+          //failed (e.g. timed out) handler is counted too:
+          hstgs[i].add(System.nanoTime() - stm);
+        }
+        //any handler can set redirect servlet, e.g. first handler spam redir:
+        String srvlRd = (String) rqDt.getAttr("srvlRd");
+        if (srvlRd != null) {
+          this.rdrCnt.incrementAndGet();
+          rqDt.remAttr("srvlRd");
+          rqDt.flsCooks();
+          pResp.sendRedirect(pReq.getContextPath() + srvlRd);
+        }
+      }
+      synchronized (lck(dir)) {
+        delDir(dir);
+      }
+      String rnd = (String) rqDt.getAttr("rnd");
+      if (rnd == null) {
+        rnd = pReq.getParameter("rnd");
+      }
+      if (rnd == null) {
+        rnd = this.defJsp;
+      }
+      RequestDispatcher rd = this.jspDsps.get(rnd);
+      rqDt.flsCooks();
+      rd.include(pReq, pResp);
+    } catch (Exception e) {
+      if (this.mtrcs != null) {
+        this.mtrcs.err(e);
+      }
+      if (this.fctApp != null) {
+        ILog logger = null;
+        try {
+          logger = (ILog) this.fctApp.laz(rqVs, this.logNm);
+          logger.error(rqVs, getClass(), "WORK", e);
+        } catch (Exception e1) {
+          e1.printStackTrace();
+          e.printStackTrace();
+        }
+      } else {
+        e.printStackTrace();
+      }
+      if (e instanceof ExcCode) {
+        ExcCode ec = (ExcCode) e;
+        if (ec.getCode() == ExcCode.WRPR || ec.getCode() == ExcCode.BUSY
+          || ec.getCode() == IOrm.DRTREAD) {
+          pReq.setAttribute("error_code", ec.getCode());
+          pReq.setAttribute("short_message", ec.getShMsg());
+        } else {
+          pReq.setAttribute("error_code",
+            HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
+      } else {
+        pReq.setAttribute("error_code",
+          HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+      }
+      pReq.setAttribute("javax.servlet.error.status_code",
+        HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+      pReq.setAttribute("javax.servlet.error.exception", e);
+      pReq.setAttribute("javax.servlet.error.request_uri",
+        pReq.getRequestURI());
+      pReq.setAttribute("javax.servlet.error.servlet_name", getClass()
+        .getCanonicalName());
+      if (rqDt != null) {
+        //handler may set cookie before failure, e.g. language:
+        rqDt.flsCooks();
+      }
+      pResp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+    }
+  }
+
+  /**
+   * <p>Checks that received chunks cover whole file, then truncates
+   * data file to total size. Upload's directory is kept.</p>
+   * @param pDir upload's directory
+   * @param pTot total size parameter
+   * @param pFlNm file name parameter
+   * @return assembled file
+   * @throws Exception - an exception
+   **/
+  public final File cmt(final File pDir, final String pTot,
+    final String pFlNm) throws Exception {
+    if (pDir == null || pTot == null || pFlNm == null) {
+      throw new ExcCode(ExcCode.WRPR, "wrong_parameters");
+    }
+    long tot = Long.parseLong(pTot);
+    synchronized (lck(pDir)) {
+      long end = 0L;
+      for (long[] chk : rdMnf(pDir).values()) {
+        if (chk[1] > end) {
+          break;
+        }
+        end = Math.max(end, chk[1] + chk[2]);
+      }
+      if (end < tot || tot <= 0L) {
+        throw new ExcCode(ExcCode.WRPR, "upload_incomplete");
+      }
+      File dat = new File(pDir, DAT);
+      RandomAccessFile raf = new RandomAccessFile(dat, "rw");
+      try {
+        raf.setLength(tot);
+      } finally {
+        raf.close();
+      }
+      return dat;
+    }
+  }
+
+  /**
+   * <p>Reads manifest.</p>
+   * @param pDir upload's directory
+   * @return received chunks (index, offset, length) by offset
+   * @throws IOException IOException
+   **/
+  private Map<Long, long[]> rdMnf(final File pDir) throws IOException {
+    Map<Long, long[]> rz = new TreeMap<Long, long[]>();
+    File mnf = new File(pDir, MNF);
+    if (!mnf.exists()) {
+      return rz;
+    }
+    BufferedReader rdr = new BufferedReader(new InputStreamReader(
+      new FileInputStream(mnf), "UTF-8"));
+    try {
+      String ln;
+      while ((ln = rdr.readLine()) != null) {
+        String[] vls = ln.split(";");
+        if (vls.length == 3) {
+          long[] chk = new long[] {Long.parseLong(vls[0]),
+            Long.parseLong(vls[1]), Long.parseLong(vls[2])};
+          long[] old = rz.get(chk[1]);
+          if (old == null || old[2] < chk[2]) {
+            rz.put(chk[1], chk);
+          }
+        }
+      }
+    } finally {
+      rdr.close();
+    }
+    return rz;
+  }
+
+  /**
+   * <p>Gets upload's directory by request's "uplId" and owner,
+   * i.e. authenticated user or session (it's created if absent).</p>
+   * @param pReq Http Servlet Request
+   * @return directory or NULL if ID is wrong
+   **/
+  private File uplDir(final HttpServletRequest pReq) {
+    String uplId = pReq.getParameter("uplId");
+    if (uplId == null || !UPLID.matcher(uplId).matches()) {
+      return null;
+    }
+    String ownr = pReq.getRemoteUser();
+    if (ownr != null) {
+      ownr = "u:" + ownr;
+    } else {
+      ownr = "s:" + pReq.getSession().getId();
+    }
+    byte[] dg;
+    try {
+      dg = MessageDigest.getInstance("SHA-256").digest((ownr + "\n" + uplId)
+        .getBytes(StandardCharsets.UTF_8));
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+    char[] hx = new char[dg.length * 2];
+    for (int i = 0; i < dg.length; i++) {
+      hx[i * 2] = HEX[(dg[i] >> HBBTS) & HBMSK];
+      hx[i * 2 + 1] = HEX[dg[i] & HBMSK];
+    }
+    return new File(this.uplDir, "chk-" + new String(hx));
+  }
+
+  /**
+   * <p>Gets manifest lock of upload.</p>
+   * @param pDir upload's directory
+   * @return lock
+   **/
+  private Object lck(final File pDir) {
+    return this.lcks[pDir.getName().hashCode() & (LCKS - 1)];
+  }
+
+  /**
+   * <p>Creates upload's directory if there is room.</p>
+   * @param pDir upload's directory
+   * @return false if there are too many unfinished uploads
+   * @throws IOException IOException
+   **/
+  private boolean mkDir(final File pDir) throws IOException {
+    synchronized (this.crLck) {
+      if (pDir.exists()) {
+        return true;
+      }
+      if (this.uplsMax > 0) {
+        String[] nms = this.uplDir.list();
+        int cnt = 0;
+        if (nms != null) {
+          for (String nm : nms) {
+            if (nm.startsWith("chk-")) {
+              cnt++;
+            }
+          }
+        }
+        if (cnt >= this.uplsMax) {
+          return false;
+        }
+      }
+      if (!pDir.mkdir() && !pDir.exists()) {
+        throw new IOException("Can't create upload dir: " + pDir);
+      }
+      return true;
+    }
+  }
+
+  /**
+   * <p>Deletes stale uploads if last sweep was hour ago,
+   * only one thread sweeps.</p>
+   **/
+  private void swp() {
+    long now = System.currentTimeMillis();
+    long lst = this.swpAt.get();
+    if (now - lst >= HRMS && this.swpAt.compareAndSet(lst, now)) {
+      delStale(this.uplTtl);
+    }
+  }
+
+  /**
+   * <p>Deletes unfinished uploads older than given age. Age is checked
+   * again under upload's lock, so upload that is resumed meanwhile
+   * isn't deleted.</p>
+   * @param pAge age in milliseconds
+   **/
+  private void delStale(final long pAge) {
+    File[] dirs = this.uplDir.listFiles();
+    if (dirs == null) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    for (File dir : dirs) {
+      if (!dir.isDirectory() || !dir.getName().startsWith("chk-")) {
+        continue;
+      }
+      synchronized (lck(dir)) {
+        long mdf = Math.max(dir.lastModified(),
+          Math.max(new File(dir, MNF).lastModified(),
+            new File(dir, DAT).lastModified()));
+        if (now - mdf > pAge) {
+          delDir(dir);
+        }
+      }
+    }
+  }
+
+  /**
+   * <p>Deletes upload's directory with its files.</p>
+   * @param pDir upload's directory
+   **/
+  private void delDir(final File pDir) {
+    File[] fls = pDir.listFiles();
+    if (fls != null) {
+      for (File fl : fls) {
+        if (!fl.delete()) {
+          fl.deleteOnExit();
+        }
+      }
+    }
+    if (!pDir.delete()) {
+      pDir.deleteOnExit();
+    }
+  }
+}
@@ -0,0 +1,422 @@
+/*
+BSD 2-Clause License
+
+Copyright (c) 2019, Beigesoft™
+All rights reserved.
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are met:
+
+* Redistributions of source code must retain the above copyright notice, this
+  list of conditions and the following disclaimer.
+
+* Redistributions in binary form must reproduce the above copyright notice,
+  this list of conditions and the following disclaimer in the documentation
+  and/or other materials provided with the distribution.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE ARE
+DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE LIABLE
+FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR
+SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER
+CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY,
+OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package org.beigesoft.web;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.Part;
+import javax.servlet.RequestDispatcher;
+
+import org.beigesoft.exc.ExcCode;
+import org.beigesoft.fct.IFctApp;
+import org.beigesoft.log.ILog;
+import org.beigesoft.hnd.IHndRq;
+import org.beigesoft.rdb.IOrm;
+
+/**
+ * <p>Generic servlet for uploading many files in single request,
+ * e.g. catalogue images. It spools every file part of multipart request
+ * into directory from init parameter "uplDir" (container's temporary
+ * directory by default) concurrently on its own bounded executor
+ * (init parameters "uplThrs" and "uplQue"), computes SHA-256 of each file,
+ * then passes list of UplFl into request attribute "filesUpl" and
+ * invokes handlers chain. Handler is responsible for moving or deleting
+ * spooled files. If any file fails, then already spooled ones
+ * are deleted and request fails. If handlers chain fails, then spooled
+ * files are deleted unless handler has taken them, i.e. has removed
+ * "filesUpl" attribute. Other parameters are the same
+ * as for WUplSng. Of course, servlet must be configured with
+ * "multipart-config".</p>
+ *
+ * @author Yury Demidenko
+ */
+@SuppressWarnings("serial")
+public class WUplMlt extends HttpServlet {
+
+  /**
+   * <p>Default spooling threads count.</p>
+   **/
+  public static final int THRSDEF = 4;
+
+  /**
+   * <p>Default spooling queue capacity.</p>
+   **/
+  public static final int QUEDEF = 64;
+
+  /**
+   * <p>HEX digits.</p>
+   **/
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  /**
+   * <p>Half-byte mask.</p>
+   **/
+  private static final int HBMSK = 0x0f;
+
+  /**
+   * <p>Half-byte bits.</p>
+   **/
+  private static final int HBBTS = 4;
+
+  /**
+   * <p>App beans factory.</p>
+   **/
+  private IFctApp fctApp;
+
+  /**
+   * <p>Folder for redirected JSP, e.g. "JSP WEB-INF/jsp/".
+   * Settled through init params.</p>
+   **/
+  private String dirJsp;
+
+  /**
+   * <p>Logger name.</p>
+   **/
+  private String logNm;
+
+  /**
+   * <p>Metrics, maybe NULL.</p>
+   **/
+  private Mtrcs mtrcs;
+
+  /**
+   * <p>Redirects counter.</p>
+   **/
+  private AtomicLong rdrCnt;
+
+  /**
+   * <p>Request handlers chain.</p>
+   **/
+  private HndChn<IHndRq> hndChn;
+
+  /**
+   * <p>Default JSP name without extension (.jsp).</p>
+   **/
+  private String defJsp;
+
+  /**
+   * <p>JSP dispatchers by view name.</p>
+   **/
+  private JspDsps jspDsps;
+
+  /**
+   * <p>Upload spooler.</p>
+   **/
+  private UplSpl uplSpl;
+
+  /**
+   * <p>Spooling executor holder. It isn't shared with "hndsExr",
+   * so asynchronous request work never waits for its own pool.</p>
+   **/
+  private HldExr uplExr;
+
+  /**
+   * <p>Request attributes to publish for JSP, NULL means all.</p>
+   **/
+  private Set<String> attrsExp;
+
+  @Override
+  public final void init() throws ServletException {
+    this.attrsExp = HttpReqDt.mkAttrsExp(getInitParameter("attrsExp"));
+    this.dirJsp = getInitParameter("dirJsp");
+    this.defJsp = getInitParameter("defJsp");
+    this.jspDsps = new JspDsps(getServletContext(), this.dirJsp);
+    this.logNm = getInitParameter("logNm");
+    String uplDir = getInitParameter("uplDir");
+    if (uplDir == null) {
+      File tmpDir = (File) getServletContext()
+        .getAttribute("javax.servlet.context.tempdir");
+      uplDir = new File(tmpDir, "upl").getAbsolutePath();
+    }
+    try {
+      this.uplSpl = UplSpl.make(uplDir, getInitParameter("uplMax"),
+        getInitParameter("uplPw"));
+    } catch (Exception e) {
+      throw new ServletException(e);
+    }
+    this.uplExr = new HldExr("upl-" + getServletName());
+    String prm = getInitParameter("uplThrs");
+    if (prm == null) {
+      this.uplExr.setThrs(THRSDEF);
+    } else {
+      this.uplExr.setThrs(Integer.parseInt(prm));
+    }
+    prm = getInitParameter("uplQue");
+    if (prm == null) {
+      this.uplExr.setQue(QUEDEF);
+    } else {
+      this.uplExr.setQue(Integer.parseInt(prm));
+    }
+    this.hndChn = new HndChn<IHndRq>(IHndRq.class,
+      getInitParameter("hndNms"));
+    this.hndChn.reg(getServletContext(), getServletName());
+    this.mtrcs = (Mtrcs) getServletContext().getAttribute(Mtrcs.CTXATTR);
+    if (this.mtrcs != null) {
+      this.rdrCnt = this.mtrcs.lazRdr(getServletName());
+    } else {
+      this.rdrCnt = new AtomicLong();
+    }
+    this.fctApp = (IFctApp) getServletContext().getAttribute("IFctApp");
+  }
+
+  @Override
+  public final void destroy() {
+    this.hndChn.unreg(getServletContext());
+    this.uplExr.release();
+  }
+
+  @Override
+  public final void doPost(final HttpServletRequest pReq,
+    final HttpServletResponse pResp) throws ServletException, IOException {
+    doWork(pReq, pResp);
+  }
+
+  /**
+   * <p>Generic request handler.</p>
+   * @param pReq Http Servlet Request
+   * @param pResp Http Servlet Response
+   * @throws ServletException ServletException
+   * @throws IOException IOException
+   **/
+  public final void doWork(final HttpServletRequest pReq,
+    final HttpServletResponse pResp) throws ServletException, IOException {
+    HashMap<String, Object> rqVs = new HashMap<String, Object>();
+    pReq.setCharacterEncoding("UTF-8");
+    pResp.setCharacterEncoding("UTF-8");
+    HttpReqDt rqDt = null;
+    List<UplFl> upls = null;
+    try {
+      rqDt = new HttpReqDt(pReq, pResp, this.attrsExp);
+      rqDt.setAttr("rvs", rqVs);
+      rqVs.put("rqDt", rqDt);
+      upls = spoolAll(pReq);
+      rqDt.setAttr("filesUpl", upls);
+      IHndRq[] hnds = this.hndChn.lazHnds(rqVs, this.fctApp);
+      Hstg[] hstgs = this.hndChn.getHstgs();
+      for (int i = 0; i < hnds.length; i++) {
+        long stm = System.nanoTime();
+        try {
+          hnds[i].handle(rqVs, rqDt);
+        } finally {
+          //failed (e.g. timed out) handler is counted too:
+          hstgs[i].add(System.nanoTime() - stm);
+        }
+        //any handler can set redirect servlet, e.g. first handler spam redir:
+        String srvlRd = (String) rqDt.getAttr("srvlRd");
+        if (srvlRd != null) {
+          this.rdrCnt.incrementAndGet();
+          rqDt.remAttr("srvlRd");
+          rqDt.flsCooks();
+          pResp.sendRedirect(pReq.getContextPath() + srvlRd);
+        }
+      }
+      String rnd = (String) rqDt.getAttr("rnd");
+      if (rnd == null) {
+        rnd = pReq.getParameter("rnd");
+      }
+      if (rnd == null) {
+        rnd = this.defJsp;
+      }
+      RequestDispatcher rd = this.jspDsps.get(rnd);
+      rqDt.flsCooks();
+      rd.include(pReq, pResp);
+    } catch (Exception e) {
+      if (upls != null && upls == rqDt.getAttr("filesUpl")) {
+        del(upls);
+      }
+      if (this.mtrcs != null) {
+        this.mtrcs.err(e);
+      }
+      if (this.fctApp != null) {
+        ILog logger = null;
+        try {
+          logger = (ILog) this.fctApp.laz(rqVs, this.logNm);
+          logger.error(rqVs, getClass(), "WORK", e);
+        } catch (Exception e1) {
+          e1.printStackTrace();
+          e.printStackTrace();
+        }
+      } else {
+        e.printStackTrace();
+      }
+      if (e instanceof ExcCode) {
+        ExcCode ec = (ExcCode) e;
+        if (ec.getCode() == ExcCode.WRPR || ec.getCode() == ExcCode.BUSY
+          || ec.getCode() == IOrm.DRTREAD) {
+          pReq.setAttribute("error_code", ec.getCode());
+          pReq.setAttribute("short_message", ec.getShMsg());
+        } else {
+          pReq.setAttribute("error_code",
+            HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
+      } else {
+        pReq.setAttribute("error_code",
+          HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+      }
+      pReq.setAttribute("javax.servlet.error.status_code",
+        HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+      pReq.setAttribute("javax.servlet.error.exception", e);
+      pReq.setAttribute("javax.servlet.error.request_uri",
+        pReq.getRequestURI());
+      pReq.setAttribute("javax.servlet.error.servlet_name", getClass()
+        .getCanonicalName());
+      if (rqDt != null) {
+        //handler may set cookie before failure, e.g. language:
+        rqDt.flsCooks();
+      }
+      pResp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+    }
+  }
+
+  /**
+   * <p>Spools all non-empty file parts concurrently.
+   * When executor is busy, part is spooled in request thread.
+   * On failure or interruption spooled files are deleted.</p>
+   * @param pReq Http Servlet Request
+   * @return uploaded files in request order
+   * @throws Exception - an exception
+   **/
+  public final List<UplFl> spoolAll(
+    final HttpServletRequest pReq) throws Exception {
+    List<FutureTask<UplFl>> fts = new ArrayList<FutureTask<UplFl>>();
+    for (final Part pt : pReq.getParts()) {
+      final String flNm = UplSpl.flNm(pt);
+      if (flNm == null || flNm.length() == 0 || pt.getSize() == 0L) {
+        continue;
+      }
+      FutureTask<UplFl> ft = new FutureTask<UplFl>(new Callable<UplFl>() {
+        @Override
+        public UplFl call() throws Exception {
+          return spool(pt, flNm);
+        }
+      });
+      fts.add(ft);
+      try {
+        this.uplExr.lazExr().execute(ft);
+      } catch (RejectedExecutionException e) {
+        ft.run();
+      }
+    }
+    List<UplFl> rz = new ArrayList<UplFl>(fts.size());
+    Exception err = null;
+    boolean isIntr = false;
+    for (FutureTask<UplFl> ft : fts) {
+      while (true) {
+        try {
+          rz.add(ft.get());
+          break;
+        } catch (InterruptedException e) {
+          //not started parts are cancelled, running ones are awaited
+          //(they only copy received body) to delete their files:
+          isIntr = true;
+          if (err == null) {
+            err = e;
+          }
+          for (FutureTask<UplFl> ftc : fts) {
+            ftc.cancel(false);
+          }
+        } catch (CancellationException e) {
+          break;
+        } catch (ExecutionException e) {
+          if (err == null) {
+            if (e.getCause() instanceof Exception) {
+              err = (Exception) e.getCause();
+            } else {
+              err = e;
+            }
+          }
+          break;
+        }
+      }
+    }
+    if (err != null) {
+      del(rz);
+      if (isIntr) {
+        Thread.currentThread().interrupt();
+      }
+      throw err;
+    }
+    return rz;
+  }
+
+  /**
+   * <p>Deletes spooled files.</p>
+   * @param pUpls uploaded files
+   **/
+  private void del(final List<UplFl> pUpls) {
+    for (UplFl uf : pUpls) {
+      File fl = new File(uf.getPth());
+      if (fl.exists() && !fl.delete()) {
+        fl.deleteOnExit();
+      }
+    }
+  }
+
+  /**
+   * <p>Spools single part.</p>
+   * @param pPart part
+   * @param pFlNm submitted file name
+   * @return uploaded file
+   * @throws Exception - an exception
+   **/
+  private UplFl spool(final Part pPart, final String pFlNm) throws Exception {
+    MessageDigest md = MessageDigest.getInstance("SHA-256");
+    File fl = this.uplSpl.spool(pPart, pFlNm, md);
+    UplFl rz = new UplFl();
+    rz.setFld(pPart.getName());
+    rz.setNme(pFlNm);
+    rz.setCntTy(pPart.getContentType());
+    rz.setSz(fl.length());
+    rz.setPth(fl.getAbsolutePath());
+    byte[] dg = md.digest();
+    char[] hx = new char[dg.length * 2];
+    for (int i = 0; i < dg.length; i++) {
+      hx[i * 2] = HEX[(dg[i] >> HBBTS) & HBMSK];
+      hx[i * 2 + 1] = HEX[dg[i] & HBMSK];
+    }
+    rz.setChkSm(new String(hx));
+    return rz;
+  }
+}
@@ -28,9 +28,10 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package org.beigesoft.web;
 
-import java.util.List;
-import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 
@@ -66,6 +67,12 @@ import org.beigesoft.rdb.IOrm;
  * Delete action requires parameter <b>nameFieldPath - entity's field name
  * that holds file path</b> for retrieving
  * path with reflection.</p>
+ * <p>If init parameter "uplDir" is set, then uploading file is streamed
+ * straight into new file in this directory (see UplSpl), and handlers
+ * get "fileUplPth", "fileUplSz" and "fileUplNm" instead of stream
+ * "fileUplIs". Handler is responsible for moving or deleting
+ * that file. If request fails, then that file is deleted unless handler
+ * has taken it, i.e. has removed "fileUplPth" attribute.</p>
  *
  * @author Yury Demidenko
  */
@@ -89,27 +96,70 @@ public class WUplSng extends HttpServlet {
   private String logNm;
 
   /**
-   * <p>Request handlers names.</p>
+   * <p>Metrics, maybe NULL.</p>
    **/
-  private final List<String> hndNms = new ArrayList<String>();
+  private Mtrcs mtrcs;
+
+  /**
+   * <p>Redirects counter.</p>
+   **/
+  private AtomicLong rdrCnt;
+
+  /**
+   * <p>Request handlers chain.</p>
+   **/
+  private HndChn<IHndRq> hndChn;
 
   /**
    * <p>Default JSP name without extension (.jsp).</p>
    **/
   private String defJsp;
 
+  /**
+   * <p>JSP dispatchers by view name.</p>
+   **/
+  private JspDsps jspDsps;
+
+  /**
+   * <p>Upload spooler, NULL if file is passed to handlers as stream.</p>
+   **/
+  private UplSpl uplSpl;
+
+  /**
+   * <p>Request attributes to publish for JSP, NULL means all.</p>
+   **/
+  private Set<String> attrsExp;
+
   @Override
   public final void init() throws ServletException {
+    this.attrsExp = HttpReqDt.mkAttrsExp(getInitParameter("attrsExp"));
     this.dirJsp = getInitParameter("dirJsp");
     this.defJsp = getInitParameter("defJsp");
+    this.jspDsps = new JspDsps(getServletContext(), this.dirJsp);
     this.logNm = getInitParameter("logNm");
-    String hndNmsStr = getInitParameter("hndNms");
-    for (String hn : hndNmsStr.split(",")) {
-      this.hndNms.add(hn);
+    try {
+      this.uplSpl = UplSpl.make(getInitParameter("uplDir"),
+        getInitParameter("uplMax"), getInitParameter("uplPw"));
+    } catch (Exception e) {
+      throw new ServletException(e);
+    }
+    this.hndChn = new HndChn<IHndRq>(IHndRq.class,
+      getInitParameter("hndNms"));
+    this.hndChn.reg(getServletContext(), getServletName());
+    this.mtrcs = (Mtrcs) getServletContext().getAttribute(Mtrcs.CTXATTR);
+    if (this.mtrcs != null) {
+      this.rdrCnt = this.mtrcs.lazRdr(getServletName());
+    } else {
+      this.rdrCnt = new AtomicLong();
     }
     this.fctApp = (IFctApp) getServletContext().getAttribute("IFctApp");
   }
 
+  @Override
+  public final void destroy() {
+    this.hndChn.unreg(getServletContext());
+  }
+
   @Override
   public final void doGet(final HttpServletRequest pReq,
     final HttpServletResponse pResp) throws ServletException, IOException {
@@ -135,25 +185,42 @@ public class WUplSng extends HttpServlet {
     HashMap<String, Object> rqVs = new HashMap<String, Object>();
     pReq.setCharacterEncoding("UTF-8");
     pResp.setCharacterEncoding("UTF-8");
+    HttpReqDt rqDt = null;
+    File spl = null;
     try {
-      HttpReqDt rqDt = new HttpReqDt(pReq, pResp);
+      rqDt = new HttpReqDt(pReq, pResp, this.attrsExp);
       rqDt.setAttr("rvs", rqVs);
       rqVs.put("rqDt", rqDt);
       String fileParam = pReq.getParameter("parFile");
       if (fileParam != null) { // create
         Part filePart = pReq.getPart(fileParam);
         String fileName = getSubmittedFileName(filePart);
-        InputStream fileToUploadIs = filePart.getInputStream();
-        rqDt.setAttr("fileUplIs", fileToUploadIs);
+        if (this.uplSpl != null) {
+          spl = this.uplSpl.spool(filePart, fileName);
+          rqDt.setAttr("fileUplPth", spl.getAbsolutePath());
+          rqDt.setAttr("fileUplSz", spl.length());
+        } else {
+          InputStream fileToUploadIs = filePart.getInputStream();
+          rqDt.setAttr("fileUplIs", fileToUploadIs);
+        }
         rqDt.setAttr("fileUplNm", fileName);
       } // else - already uploaded file path
-      for (String hn : this.hndNms) {
-        IHndRq hnd = (IHndRq) this.fctApp.laz(rqVs, hn);
-        hnd.handle(rqVs, rqDt);
+      IHndRq[] hnds = this.hndChn.lazHnds(rqVs, this.fctApp);
+      Hstg[] hstgs = this.hndChn.getHstgs();
+      for (int i = 0; i < hnds.length; i++) {
+        long stm = System.nanoTime();
+        try {
+          hnds[i].handle(rqVs, rqDt);
+        } finally {
+          //failed (e.g. timed out) handler is counted too:
+          hstgs[i].add(System.nanoTime() - stm);
+        }
         //any handler can set redirect servlet, e.g. first handler spam redir:
         String srvlRd = (String) rqDt.getAttr("srvlRd");
         if (srvlRd != null) {
+          this.rdrCnt.incrementAndGet();
           rqDt.remAttr("srvlRd");
+          rqDt.flsCooks();
           pResp.sendRedirect(pReq.getContextPath() + srvlRd);
         }
       }
@@ -164,10 +231,18 @@ public class WUplSng extends HttpServlet {
       if (rnd == null) {
         rnd = this.defJsp;
       }
-      String path = dirJsp + rnd + ".jsp";
-      RequestDispatcher rd = getServletContext().getRequestDispatcher(path);
+      RequestDispatcher rd = this.jspDsps.get(rnd);
+      rqDt.flsCooks();
       rd.include(pReq, pResp);
     } catch (Exception e) {
+      if (spl != null && spl.getAbsolutePath()
+        .equals(rqDt.getAttr("fileUplPth"))
+          && spl.exists() && !spl.delete()) {
+        spl.deleteOnExit();
+      }
+      if (this.mtrcs != null) {
+        this.mtrcs.err(e);
+      }
       if (this.fctApp != null) {
         ILog logger = null;
         try {
@@ -201,6 +276,10 @@ public class WUplSng extends HttpServlet {
         pReq.getRequestURI());
       pReq.setAttribute("javax.servlet.error.servlet_name", getClass()
         .getCanonicalName());
+      if (rqDt != null) {
+        //handler may set cookie before failure, e.g. language:
+        rqDt.flsCooks();
+      }
       pResp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
     }
   }
@@ -28,11 +28,13 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package org.beigesoft.web;
 
-import java.util.List;
-import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -48,11 +50,14 @@ import org.beigesoft.rdb.IOrm;
 /**
  * <p>Generic servlet that passes response writer to request handler
  * as "htmWri" variable in request vars.
- * See DB replicators for example.</p>
+ * See DB replicators for example.
+ * Response maybe compressed for content types from "cmprTys".
+ * With init parameter "async"="true" (and "async-supported" in web.xml)
+ * handlers chain is done on handlers executor.</p>
  * @author Yury Demidenko
  */
 @SuppressWarnings("serial")
-public class WWriter extends HttpServlet {
+public class WWriter extends HttpServlet implements IWrkRq {
 
   /**
    * <p>App beans factory.</p>
@@ -64,6 +69,22 @@ public class WWriter extends HttpServlet {
    **/
   private String logNm;
 
+  /**
+   * <p>Metrics, maybe NULL.</p>
+   **/
+  private Mtrcs mtrcs;
+
+  /**
+   * <p>Redirects counter.</p>
+   **/
+  private AtomicLong rdrCnt;
+
+  /**
+   * <p>Response compressor, NULL if it isn't configured
+   * by init parameter "cmprTys".</p>
+   **/
+  private Cmprs cmprs;
+
   /**
    * <p>Content type, e.g. "text/html; charset=UTF-8"
    * or "text/xml; charset=UTF-8".</p>
@@ -71,33 +92,103 @@ public class WWriter extends HttpServlet {
   private String contTy;
 
   /**
-   * <p>Request handlers names.</p>
+   * <p>Request handlers chain.</p>
+   **/
+  private HndChn<IHndRq> hndChn;
+
+  /**
+   * <p>Handlers executor if servlet is in asynchronous mode,
+   * i.e. init parameter "async" is "true".</p>
    **/
-  private final List<String> hndNms = new ArrayList<String>();
+  private HldExr hldExr;
+
+  /**
+   * <p>Request attributes to publish for JSP, NULL means all.</p>
+   **/
+  private Set<String> attrsExp;
+
+  /**
+   * <p>Request limits, maybe NULL.</p>
+   **/
+  private RqLmt rqLmt;
+
+  /**
+   * <p>Rejected by limits requests counter.</p>
+   **/
+  private AtomicLong rjcCnt;
 
   @Override
   public final void init() throws ServletException {
+    this.attrsExp = HttpReqDt.mkAttrsExp(getInitParameter("attrsExp"));
     this.contTy = getInitParameter("contTy");
+    this.cmprs = Cmprs.make(getInitParameter("cmprTys"),
+      getInitParameter("cmprMin"));
     this.logNm = getInitParameter("logNm");
-    String hndNmsStr = getInitParameter("hndNms");
-    for (String hn : hndNmsStr.split(",")) {
-      this.hndNms.add(hn);
+    this.hndChn = new HndChn<IHndRq>(IHndRq.class,
+      getInitParameter("hndNms"));
+    this.hndChn.reg(getServletContext(), getServletName());
+    if (Boolean.parseBoolean(getInitParameter("async"))) {
+      this.hldExr = (HldExr) getServletContext().getAttribute(HldExr.CTXATTR);
+    }
+    this.mtrcs = (Mtrcs) getServletContext().getAttribute(Mtrcs.CTXATTR);
+    this.rqLmt = RqLmt.make(getInitParameter("maxBdSz"),
+      getInitParameter("maxPrmCnt"), getInitParameter("maxPrmLen"));
+    if (this.mtrcs != null) {
+      this.rdrCnt = this.mtrcs.lazRdr(getServletName());
+      this.rjcCnt = this.mtrcs.lazRjc(getServletName());
+    } else {
+      this.rdrCnt = new AtomicLong();
+      this.rjcCnt = new AtomicLong();
     }
     this.fctApp = (IFctApp) getServletContext().getAttribute("IFctApp");
   }
 
+  @Override
+  public final void destroy() {
+    if (this.cmprs != null) {
+      this.cmprs.release();
+    }
+    this.hndChn.unreg(getServletContext());
+  }
+
   @Override
   public final void doGet(final HttpServletRequest pReq,
     final HttpServletResponse pResp) throws ServletException, IOException {
-    doWork(pReq, pResp);
+    dspch(pReq, pResp);
   }
 
   @Override
   public final void doPost(final HttpServletRequest pReq,
     final HttpServletResponse pResp) throws ServletException, IOException {
-    doWork(pReq, pResp);
+    dspch(pReq, pResp);
   }
 
+  /**
+   * <p>Rejects request that exceeds limits, then does work either
+   * on handlers executor in asynchronous mode or on container thread.</p>
+   * @param pReq Http Servlet Request
+   * @param pResp Http Servlet Response
+   * @throws ServletException ServletException
+   * @throws IOException IOException
+   **/
+  public final void dspch(final HttpServletRequest pReq,
+    final HttpServletResponse pResp) throws ServletException, IOException {
+    if (this.rqLmt != null) {
+      //before parameters parsing:
+      pReq.setCharacterEncoding("UTF-8");
+      int sts = this.rqLmt.chk(pReq);
+      if (sts != 0) {
+        this.rjcCnt.incrementAndGet();
+        pResp.sendError(sts);
+        return;
+      }
+    }
+    if (this.hldExr != null && pReq.isAsyncSupported()) {
+      this.hldExr.dspch(pReq, pResp, this);
+    } else {
+      doWork(pReq, pResp);
+    }
+  }
 
   /**
    * <p>Generic request handler.</p>
@@ -106,6 +197,7 @@ public class WWriter extends HttpServlet {
    * @throws ServletException ServletException
    * @throws IOException IOException
    **/
+  @Override
   public final void doWork(final HttpServletRequest pReq,
     final HttpServletResponse pResp) throws ServletException, IOException {
     HashMap<String, Object> rqVs = new HashMap<String, Object>();
@@ -113,23 +205,44 @@ public class WWriter extends HttpServlet {
     pResp.setCharacterEncoding("UTF-8");
     pResp.setContentType(this.contTy);
     PrintWriter htmWri = null;
+    OutputStream cmOus = null;
     try {
-      htmWri = pResp.getWriter();
-      HttpReqDt rqDt = new HttpReqDt(pReq, pResp);
+      if (this.cmprs != null) {
+        cmOus = this.cmprs.wrap(pReq, pResp, this.contTy);
+      }
+      if (cmOus != null) {
+        htmWri = new PrintWriter(new OutputStreamWriter(cmOus, "UTF-8"));
+      } else {
+        htmWri = pResp.getWriter();
+      }
+      HttpReqDt rqDt = new HttpReqDt(pReq, pResp, this.attrsExp);
+      //handlers write response, so cookies can't wait:
+      rqDt.setIsCkImd(true);
       rqDt.setAttr("rvs", rqVs);
       rqVs.put("rqDt", rqDt);
       rqVs.put("htmWri", htmWri);
-      for (String hn : this.hndNms) {
-        IHndRq hnd = (IHndRq) this.fctApp.laz(rqVs, hn);
-        hnd.handle(rqVs, rqDt);
+      IHndRq[] hnds = this.hndChn.lazHnds(rqVs, this.fctApp);
+      Hstg[] hstgs = this.hndChn.getHstgs();
+      for (int i = 0; i < hnds.length; i++) {
+        long stm = System.nanoTime();
+        try {
+          hnds[i].handle(rqVs, rqDt);
+        } finally {
+          //failed (e.g. timed out) handler is counted too:
+          hstgs[i].add(System.nanoTime() - stm);
+        }
         //any handler can set redirect servlet, e.g. first handler spam redir:
         String srvlRd = (String) rqDt.getAttr("srvlRd");
         if (srvlRd != null) {
+          this.rdrCnt.incrementAndGet();
           rqDt.remAttr("srvlRd");
           pResp.sendRedirect(pReq.getContextPath() + srvlRd);
         }
       }
     } catch (Exception e) {
+      if (this.mtrcs != null) {
+        this.mtrcs.err(e);
+      }
       if (this.fctApp != null) {
         ILog logger = null;
         try {
@@ -163,6 +276,9 @@ public class WWriter extends HttpServlet {
         pReq.getRequestURI());
       pReq.setAttribute("javax.servlet.error.servlet_name", getClass()
         .getCanonicalName());
+      if (cmOus != null && !pResp.isCommitted()) {
+        pResp.reset(); //clear content encoding header
+      }
       pResp.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
     } finally {
       if (htmWri != null) {